@@ -25,6 +25,47 @@ public class AppConfig {
         return properties.getProperty("database.url", "jdbc:sqlite:autoservice.db");
     }
 
+    public static int getDatabasePoolSize() {
+        return Integer.parseInt(properties.getProperty("database.pool.size", "4"));
+    }
+
+    public static int getDatabaseReadPoolSize() {
+        return Integer.parseInt(properties.getProperty("database.read_pool.size",
+                String.valueOf(Math.max(4, Runtime.getRuntime().availableProcessors()))));
+    }
+
+    public static long getDatabasePoolTimeoutMillis() {
+        return Long.parseLong(properties.getProperty("database.pool.timeout_ms", "30000"));
+    }
+
+    public static int getStatementCacheSize() {
+        return Integer.parseInt(properties.getProperty("database.statement_cache.size", "64"));
+    }
+
+    public static long getGroupCommitWindowMillis() {
+        return Long.parseLong(properties.getProperty("database.group_commit.window_ms", "2"));
+    }
+
+    public static int getGroupCommitMaxBatch() {
+        return Integer.parseInt(properties.getProperty("database.group_commit.max_batch", "256"));
+    }
+
+    public static int getRecordCacheSize() {
+        return Integer.parseInt(properties.getProperty("cache.service_records.size", "1000"));
+    }
+
+    public static String getBackupDirectory() {
+        return properties.getProperty("backup.dir", "backups");
+    }
+
+    public static int getBackupFullIntervalDays() {
+        return Integer.parseInt(properties.getProperty("backup.full_interval_days", "7"));
+    }
+
+    public static int getBackgroundThreads() {
+        return Integer.parseInt(properties.getProperty("tasks.threads", "4"));
+    }
+
     public static String getTwilioAccountSid() {
         return properties.getProperty("twilio.account_sid");
     }
@@ -0,0 +1,105 @@
+package config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Схема журнала изменений для инкрементных резервных копий.
+ * Триггеры на копируемых таблицах записывают в backup_changes таблицу и id каждой
+ * вставленной, измененной или удаленной строки; номер seq служит водяным знаком копии.
+ * Водяной знак по id или created_at не видит изменений и удалений существующих строк,
+ * журнал видит все.
+ * В backup_log хранится история копий и номер последнего изменения, вошедшего в каждую.
+ * Для каждой строки в журнале хранится только последнее изменение (INSERT OR REPLACE
+ * по уникальному индексу): инкрементной копии нужен лишь факт изменения после водяного знака,
+ * поэтому журнал не растет без копий больше, чем число когда-либо измененных строк.
+ */
+public class BackupSchema {
+    /**
+     * Таблицы с данными, которые попадают в резервную копию, в порядке восстановления
+     * (сначала таблицы, на которые ссылаются внешние ключи). Сводные таблицы и эскизы
+     * не копируются: их поддерживают триггеры и пересчитывает SketchSchema.
+     */
+    public static final List<String> TABLES = List.of(
+            "users", "service_records", "spare_parts", "work_schedules", "parts_usage", "payments");
+
+    private static final String CREATE_CHANGES_SQL = """
+    CREATE TABLE IF NOT EXISTS backup_changes (
+        seq INTEGER PRIMARY KEY AUTOINCREMENT,
+        table_name TEXT NOT NULL,
+        row_id INTEGER NOT NULL
+    )
+    """;
+
+    private static final String CREATE_CHANGES_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS idx_backup_changes_table ON backup_changes(table_name, seq)";
+
+    private static final String CREATE_LOG_SQL = """
+    CREATE TABLE IF NOT EXISTS backup_log (
+        id INTEGER PRIMARY KEY AUTOINCREMENT,
+        kind TEXT NOT NULL,
+        file TEXT NOT NULL,
+        change_seq INTEGER NOT NULL,
+        row_count INTEGER NOT NULL,
+        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    )
+    """;
+
+    private static final String LOG_CHANGE_SQL =
+            "INSERT INTO backup_changes (table_name, row_id) VALUES ('%s', %s.id);\n";
+
+    // Последнее изменение строки заменяет предыдущее и получает новый seq
+    private static final String REPLACE_CHANGE_SQL =
+            "INSERT OR REPLACE INTO backup_changes (table_name, row_id) VALUES ('%s', %s.id);\n";
+
+    // Остается только последнее изменение каждой строки
+    private static final String COMPACT_CHANGES_SQL =
+            "DELETE FROM backup_changes WHERE seq NOT IN " +
+                    "(SELECT MAX(seq) FROM backup_changes GROUP BY table_name, row_id)";
+
+    private static final String CREATE_CHANGES_ROW_INDEX_SQL =
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_backup_changes_row ON backup_changes(table_name, row_id)";
+
+    /**
+     * Инструкции миграции: журнал, история копий и триггеры на копируемых таблицах
+     */
+    public static String[] createStatements() {
+        List<String> statements = new ArrayList<>();
+        statements.add(CREATE_CHANGES_SQL);
+        statements.add(CREATE_CHANGES_INDEX_SQL);
+        statements.add(CREATE_LOG_SQL);
+        addTriggers(statements, LOG_CHANGE_SQL, "INSERT");
+        return statements.toArray(new String[0]);
+    }
+
+    /**
+     * Инструкции миграции: сжатие журнала до последнего изменения каждой строки,
+     * уникальный индекс по строке и триггеры, заменяющие ее предыдущее изменение
+     */
+    public static String[] compactStatements() {
+        List<String> statements = new ArrayList<>();
+        statements.add(COMPACT_CHANGES_SQL);
+        statements.add(CREATE_CHANGES_ROW_INDEX_SQL);
+        for (String table : TABLES) {
+            for (String event : new String[]{"insert", "update", "delete"}) {
+                statements.add("DROP TRIGGER IF EXISTS trg_backup_" + table + "_" + event);
+            }
+        }
+        addTriggers(statements, REPLACE_CHANGE_SQL, "INSERT OR REPLACE");
+        return statements.toArray(new String[0]);
+    }
+
+    private static void addTriggers(List<String> statements, String logChangeSql, String insert) {
+        for (String table : TABLES) {
+            statements.add("CREATE TRIGGER trg_backup_" + table + "_insert AFTER INSERT ON " + table + " BEGIN\n" +
+                    String.format(logChangeSql, table, "NEW") + "END");
+            // При смене id строка со старым id тоже считается удаленной
+            statements.add("CREATE TRIGGER trg_backup_" + table + "_update AFTER UPDATE ON " + table + " BEGIN\n" +
+                    String.format(logChangeSql, table, "NEW") +
+                    insert + " INTO backup_changes (table_name, row_id) SELECT '" + table + "', OLD.id " +
+                    "WHERE OLD.id <> NEW.id;\nEND");
+            statements.add("CREATE TRIGGER trg_backup_" + table + "_delete AFTER DELETE ON " + table + " BEGIN\n" +
+                    String.format(logChangeSql, table, "OLD") + "END");
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ограниченный пул соединений с базой данных.
+ * Физические соединения создаются фабрикой один раз и переиспользуются,
+ * вызывающему коду выдается обертка, у которой close() возвращает соединение в пул.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    /**
+     * Фабрика физических соединений
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final String name;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final ConnectionFactory factory;
+
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+
+    // Метрики
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger physical = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public ConnectionPool(String name, int maxSize, long acquireTimeoutMillis, ConnectionFactory factory) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Размер пула должен быть положительным");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.factory = factory;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Заранее открывает физические соединения, чтобы первые запросы не платили за подключение
+     * @param count желаемое количество соединений (не больше размера пула)
+     */
+    public void warmUp(int count) throws SQLException {
+        int target = Math.min(count, maxSize);
+        long start = System.nanoTime();
+        while (physical.get() < target) {
+            idle.offerLast(createPhysical());
+        }
+        logger.log(Level.INFO, "Пул {0}: прогрето {1} соединений за {2} мс",
+                new Object[]{name, physical.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+    }
+
+    /**
+     * Выдает соединение из пула, при необходимости ожидая освобождения
+     * @return обертка над физическим соединением; close() возвращает его в пул
+     * @throws SQLException если пул закрыт, истекло время ожидания или не удалось подключиться
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений " + name + " закрыт");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Истекло время ожидания соединения из пула " + name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения прервано", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        Connection conn = idle.pollFirst();
+        try {
+            if (conn == null) {
+                conn = createPhysical();
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        active.incrementAndGet();
+        return wrap(conn);
+    }
+
+    /**
+     * Возвращает снимок метрик пула
+     */
+    public PoolMetrics getMetrics() {
+        long acquires = acquireCount.get();
+        return new PoolMetrics(name, maxSize, active.get(), idle.size(), createdCount.get(), acquires,
+                TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()),
+                acquires == 0 ? 0.0 : totalWaitNanos.get() / (double) acquires / 1_000_000.0,
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+    }
+
+    /**
+     * Закрывает все простаивающие соединения; выданные закрываются при возврате
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Connection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            closePhysical(conn);
+        }
+        logger.log(Level.INFO, "Пул {0} закрыт: {1}", new Object[]{name, getMetrics()});
+    }
+
+    private Connection createPhysical() throws SQLException {
+        Connection conn = factory.create();
+        physical.incrementAndGet();
+        createdCount.incrementAndGet();
+        return conn;
+    }
+
+    private void closePhysical(Connection conn) {
+        physical.decrementAndGet();
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Ошибка при закрытии соединения пула " + name, e);
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private void release(Connection conn) {
+        active.decrementAndGet();
+        try {
+            if (closed || !reset(conn)) {
+                closePhysical(conn);
+            } else {
+                idle.offerFirst(conn);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Возвращает соединение в исходное состояние; false - соединение непригодно
+    private boolean reset(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            conn.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Соединение пула " + name + " повреждено и будет закрыто", e);
+            return false;
+        }
+    }
+
+    private Connection wrap(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(conn));
+    }
+
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physicalConnection;
+        private boolean released;
+
+        PooledConnectionHandler(Connection physicalConnection) {
+            this.physicalConnection = physicalConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(physicalConnection);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || physicalConnection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + name + "]";
+                default:
+                    if (released) {
+                        throw new SQLException("Соединение уже возвращено в пул " + name);
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(physicalConnection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        // getConnection() запроса возвращает эту обертку: закрытие физического соединения обошло бы пул
+                        return wrapStatement((Statement) result, method.getReturnType(), (Connection) proxy);
+                    }
+                    return result;
+            }
+        }
+    }
+
+    private Object wrapStatement(Statement statement, Class<?> type, Connection connection) {
+        return Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return connection;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            try {
+                                return method.invoke(statement, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    /**
+     * Снимок метрик пула соединений
+     */
+    public static class PoolMetrics {
+        private final String poolName;
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final long created;
+        private final long acquired;
+        private final long totalWaitMillis;
+        private final double averageWaitMillis;
+        private final long maxWaitMillis;
+
+        PoolMetrics(String poolName, int maxSize, int active, int idle, long created, long acquired,
+                    long totalWaitMillis, double averageWaitMillis, long maxWaitMillis) {
+            this.poolName = poolName;
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.created = created;
+            this.acquired = acquired;
+            this.totalWaitMillis = totalWaitMillis;
+            this.averageWaitMillis = averageWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        public String getPoolName() {
+            return poolName;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getAcquired() {
+            return acquired;
+        }
+
+        public long getTotalWaitMillis() {
+            return totalWaitMillis;
+        }
+
+        public double getAverageWaitMillis() {
+            return averageWaitMillis;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolMetrics{" +
+                    "pool='" + poolName + '\'' +
+                    ", maxSize=" + maxSize +
+                    ", active=" + active +
+                    ", idle=" + idle +
+                    ", created=" + created +
+                    ", acquired=" + acquired +
+                    ", totalWaitMillis=" + totalWaitMillis +
+                    ", averageWaitMillis=" + String.format("%.3f", averageWaitMillis) +
+                    ", maxWaitMillis=" + maxWaitMillis +
+                    '}';
+        }
+    }
+}
@@ -2,14 +2,33 @@ package config;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class DatabaseConfig {
     private static final Logger logger = Logger.getLogger(DatabaseConfig.class.getName());
 
+    private static volatile ConnectionPool pool;
+    private static volatile ConnectionPool readPool;
+    private static volatile DatabaseWriter writer;
+    // После shutdown соединения и писатель больше не создаются
+    private static volatile boolean closed;
+
+    static {
+        try {
+            // Регистрация драйвера (необходимо для некоторых версий JDBC)
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError("SQLite JDBC драйвер не найден");
+        }
+    }
+
     // SQL для создания таблиц
     private static final String[] CREATE_TABLES_SQL = {
             // Таблица пользователей
@@ -127,16 +146,28 @@ public class DatabaseConfig {
     };
 
     // Индексы для улучшения производительности
+    // (индексы work_schedules по mechanic_id и record_id создаются вместе с таблицами)
     private static final String[] CREATE_INDEXES_SQL = {
             "CREATE INDEX IF NOT EXISTS idx_service_records_date ON service_records(date)",
-            "CREATE INDEX IF NOT EXISTS idx_service_records_status ON service_records(status)",
             "CREATE INDEX IF NOT EXISTS idx_service_records_mechanic ON service_records(assigned_mechanic_id)",
-            "CREATE INDEX IF NOT EXISTS idx_work_schedule_mechanic ON work_schedule(mechanic_id)",
-            "CREATE INDEX IF NOT EXISTS idx_work_schedule_record ON work_schedule(record_id)",
+            "CREATE INDEX IF NOT EXISTS idx_users_full_name ON users(full_name)",
+            // Составные индексы для фильтров панели менеджера и расписания механика
+            "CREATE INDEX IF NOT EXISTS idx_service_records_status_date ON service_records(status, date)",
+            "CREATE INDEX IF NOT EXISTS idx_service_records_mechanic_date ON service_records(assigned_mechanic_id, date)",
             "CREATE INDEX IF NOT EXISTS idx_parts_usage_record ON parts_usage(record_id)",
             "CREATE INDEX IF NOT EXISTS idx_parts_usage_part ON parts_usage(part_id)"
     };
 
+    // Запросы панелей, которые должны выполняться по индексу (проверяются через EXPLAIN QUERY PLAN)
+    private static final String[] DASHBOARD_QUERIES_SQL = {
+            "SELECT * FROM service_records WHERE date BETWEEN ? AND ? ORDER BY date DESC, id DESC LIMIT ?",
+            "SELECT * FROM service_records WHERE status = ? AND date BETWEEN ? AND ? " +
+                    "ORDER BY date DESC, id DESC LIMIT ?",
+            "SELECT * FROM service_records WHERE assigned_mechanic_id = ? AND date BETWEEN ? AND ? " +
+                    "ORDER BY date DESC",
+            "SELECT * FROM users WHERE (full_name, id) > (?, ?) ORDER BY full_name, id LIMIT ?"
+    };
+
     // Начальные данные
     private static final String[] INITIAL_DATA_SQL = {
             // Администратор по умолчанию (пароль: admin)
@@ -156,66 +187,230 @@ public class DatabaseConfig {
 
     };
 
+    // Версии схемы. Новые изменения схемы добавляются только новой миграцией в конец списка.
+    // Инструкции первых версий идемпотентны (IF NOT EXISTS), поэтому базы, созданные
+    // до появления schema_version, проходят их без ошибок.
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Таблицы, триггеры и начальные данные",
+                    CREATE_TABLES_SQL, CREATE_TRIGGERS_SQL, INITIAL_DATA_SQL),
+            new Migration(2, "Индексы выборок и панелей", CREATE_INDEXES_SQL),
+            new Migration(3, "Сводная таблица выручки по дням, неделям и месяцам",
+                    RevenueRollupSchema.createStatements()),
+            new Migration(4, "Дневные эскизы аналитики", SketchSchema.createStatements()),
+            new Migration(5, "Журнал изменений для инкрементных резервных копий", BackupSchema.createStatements()),
+            // Эскизы нельзя заполнить SQL; таблица перестраивается целиком, в том числе в базах,
+            // где после миграции 4 эскизы появились только для новых дней
+            new Migration(6, "Заполнение дневных эскизов по всей истории", SketchSchema::backfill,
+                    new String[]{"DELETE FROM analytics_sketches"}),
+            // ServiceRecord и DataService всегда работали со столбцом notes, которого не было в таблице
+            new Migration(7, "Примечания к записям сервиса",
+                    new String[]{"ALTER TABLE service_records ADD COLUMN notes TEXT"}),
+            // Без копий журнал рос на строку при каждой записи; теперь хранит одну строку на измененную строку
+            new Migration(8, "Сжатие журнала изменений резервных копий", BackupSchema.compactStatements())
+    );
+
     /**
-     * Инициализирует базу данных: создает таблицы, индексы, триггеры и начальные данные
+     * Инициализирует базу данных: применяет недостающие миграции схемы и прогревает пулы соединений
      */
     public static void initialize() {
         logger.info("Инициализация базы данных...");
+        long start = System.nanoTime();
 
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            // Включение поддержки внешних ключей
-            stmt.execute("PRAGMA foreign_keys = ON");
+        try (Connection conn = getConnection()) {
+            int applied = new SchemaMigrator(MIGRATIONS).migrate(conn);
 
-            // Создание таблиц
-            logger.info("Создание таблиц...");
-            for (String sql : CREATE_TABLES_SQL) {
-                stmt.execute(sql);
+            // Проверка планов запросов панелей после изменения схемы
+            if (applied > 0) {
+                verifyQueryPlans(conn);
             }
 
-            // Создание триггеров
-            logger.info("Создание триггеров...");
-            for (String sql : CREATE_TRIGGERS_SQL) {
-                stmt.execute(sql);
-            }
-
-            // Создание индексов
-            logger.info("Создание индексов...");
-            for (String sql : CREATE_INDEXES_SQL) {
-                stmt.execute(sql);
-            }
-
-            // Инициализация начальных данных
-            logger.info("Добавление начальных данных...");
-            for (String sql : INITIAL_DATA_SQL) {
-                stmt.execute(sql);
-            }
-
-            logger.info("База данных успешно инициализирована");
+            logger.log(Level.INFO, "База данных успешно инициализирована за {0} мс",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Ошибка инициализации базы данных", e);
             throw new RuntimeException("Ошибка инициализации базы данных", e);
         }
+
+        // Прогрев пулов соединений
+        try {
+            getPool().warmUp(AppConfig.getDatabasePoolSize());
+            getReadPool().warmUp(AppConfig.getDatabaseReadPoolSize());
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Ошибка прогрева пула соединений", e);
+            throw new RuntimeException("Ошибка прогрева пула соединений", e);
+        }
     }
 
     /**
-     * Возвращает соединение с базой данных
-     * @return Connection объект соединения
+     * Проверяет через EXPLAIN QUERY PLAN, что запросы панелей используют индексы.
+     * Полный просмотр таблицы или временное B-дерево для сортировки отмечаются предупреждением.
+     * @return true если все запросы покрыты индексами
+     */
+    static boolean verifyQueryPlans(Connection conn) throws SQLException {
+        boolean covered = true;
+        for (String sql : DASHBOARD_QUERIES_SQL) {
+            try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+                // Значения параметров не влияют на план, важна только их привязка
+                int paramCount = stmt.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= paramCount; i++) {
+                    stmt.setInt(i, 1);
+                }
+
+                StringBuilder plan = new StringBuilder();
+                boolean indexed = true;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String detail = rs.getString("detail");
+                        plan.append(detail).append("; ");
+                        if (detail.startsWith("SCAN") || detail.contains("TEMP B-TREE")) {
+                            indexed = false;
+                        }
+                    }
+                }
+
+                if (indexed) {
+                    logger.log(Level.FINE, "План запроса {0}: {1}", new Object[]{sql, plan});
+                } else {
+                    covered = false;
+                    logger.log(Level.WARNING, "Запрос не покрыт индексом: {0}. План: {1}", new Object[]{sql, plan});
+                }
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Возвращает соединение с базой данных из пула
+     * @return Connection объект соединения; close() возвращает его в пул
      * @throws SQLException если произошла ошибка при подключении
      */
     public static Connection getConnection() throws SQLException {
-        try {
-            // Регистрация драйвера (необходимо для некоторых версий JDBC)
-            Class.forName("org.sqlite.JDBC");
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("SQLite JDBC драйвер не найден", e);
+        checkOpen();
+        return getPool().getConnection();
+    }
+
+    /**
+     * Возвращает соединение только для чтения (PRAGMA query_only) из пула читателей.
+     * В режиме WAL читатели не блокируют писателя и друг друга.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        checkOpen();
+        return getReadPool().getConnection();
+    }
+
+    /**
+     * Возвращает единственного писателя, через которого выполняются все изменения данных.
+     * После shutdown возвращается остановленный писатель, который отклоняет операции.
+     */
+    public static DatabaseWriter getWriter() {
+        DatabaseWriter current = writer;
+        if (current == null) {
+            synchronized (DatabaseConfig.class) {
+                current = writer;
+                if (current == null) {
+                    current = new DatabaseWriter(DatabaseConfig::createConnection,
+                            AppConfig.getGroupCommitWindowMillis(), AppConfig.getGroupCommitMaxBatch());
+                    writer = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Возвращает метрики пула соединений
+     */
+    public static ConnectionPool.PoolMetrics getPoolMetrics() {
+        return getPool().getMetrics();
+    }
+
+    /**
+     * Возвращает счетчики кэша подготовленных запросов по всем соединениям
+     */
+    public static StatementCache.Metrics getStatementCacheMetrics() {
+        return StatementCache.getMetrics();
+    }
+
+    /**
+     * Возвращает метрики пула читателей
+     */
+    public static ConnectionPool.PoolMetrics getReadPoolMetrics() {
+        return getReadPool().getMetrics();
+    }
+
+    /**
+     * Останавливает писателя и закрывает пулы соединений при завершении приложения.
+     * Закрытые экземпляры остаются на месте: поздние обращения получают ошибку,
+     * а не создают новый пул или писателя.
+     */
+    public static synchronized void shutdown() {
+        closed = true;
+        // Писатель создается и сразу останавливается, даже если записей не было
+        getWriter().close();
+        if (readPool != null) {
+            readPool.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private static void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("База данных закрыта");
+        }
+    }
+
+    private static ConnectionPool getPool() {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DatabaseConfig.class) {
+                current = pool;
+                if (current == null) {
+                    current = new ConnectionPool("main", AppConfig.getDatabasePoolSize(),
+                            AppConfig.getDatabasePoolTimeoutMillis(), DatabaseConfig::createConnection);
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static ConnectionPool getReadPool() {
+        ConnectionPool current = readPool;
+        if (current == null) {
+            synchronized (DatabaseConfig.class) {
+                current = readPool;
+                if (current == null) {
+                    current = new ConnectionPool("read", AppConfig.getDatabaseReadPoolSize(),
+                            AppConfig.getDatabasePoolTimeoutMillis(), DatabaseConfig::createReadConnection);
+                    readPool = current;
+                }
+            }
         }
+        return current;
+    }
 
+    private static Connection createReadConnection() throws SQLException {
+        Connection conn = createConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA query_only = ON");
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Открывает новое физическое соединение и применяет настройки SQLite.
+     * Вызывается только пулами и писателем, один раз на каждое физическое соединение.
+     */
+    private static Connection createConnection() throws SQLException {
         // Получение URL базы данных из конфигурации
         String dbUrl = AppConfig.getDatabaseUrl();
-        logger.log(Level.INFO, "Подключение к базе данных: {0}", dbUrl);
+        logger.log(Level.FINE, "Подключение к базе данных: {0}", dbUrl);
 
         // Настройка соединения
         Connection conn = DriverManager.getConnection(dbUrl);
@@ -226,9 +421,15 @@ public class DatabaseConfig {
             stmt.execute("PRAGMA synchronous = NORMAL");
             stmt.execute("PRAGMA temp_store = MEMORY");
             stmt.execute("PRAGMA cache_size = 10000");
+            // Ожидание освобождения блокировки писателя вместо немедленного SQLITE_BUSY
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
         }
 
-        return conn;
+        // Повторные запросы с тем же текстом не компилируются заново
+        return StatementCache.wrap(conn, AppConfig.getStatementCacheSize());
     }
 
     /**
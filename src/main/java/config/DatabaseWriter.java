@@ -0,0 +1,328 @@
+package config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Единственный писатель в базу данных.
+ * SQLite в режиме WAL допускает много читателей, но только одного писателя,
+ * поэтому все изменения выполняются последовательно в выделенном потоке
+ * на собственном соединении, а вызывающий код получает CompletableFuture.
+ *
+ * Операции, поступившие в пределах короткого окна, объединяются в одну транзакцию
+ * (group commit): вместо fsync журнала WAL на каждую строку выполняется один commit
+ * на пачку. Каждая операция выполняется внутри собственной точки сохранения,
+ * поэтому ошибка одной операции не отменяет остальные.
+ */
+public class DatabaseWriter implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(DatabaseWriter.class.getName());
+
+    /**
+     * Операция записи, выполняемая в потоке писателя.
+     * Операция выполняется внутри транзакции писателя и не должна сама вызывать commit/rollback.
+     * @param <T> тип результата
+     */
+    @FunctionalInterface
+    public interface WriteTask<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Действие в конце пачки, выполняемое в той же транзакции перед commit
+     */
+    @FunctionalInterface
+    public interface CommitHook {
+        void beforeCommit(Connection conn) throws SQLException;
+    }
+
+    private static final PendingWrite<Void> SHUTDOWN = new PendingWrite<>(conn -> null);
+
+    private final ConnectionPool.ConnectionFactory factory;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingWrite<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    // Действия перед commit текущей пачки; используются только потоком писателя
+    private final Map<Object, CommitHook> commitHooks = new LinkedHashMap<>();
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong commitCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param factory фабрика соединения писателя
+     * @param batchWindowMillis сколько ждать дополнительных операций после первой в пачке
+     * @param maxBatchSize максимальное количество операций в одной транзакции
+     */
+    public DatabaseWriter(ConnectionPool.ConnectionFactory factory, long batchWindowMillis, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Размер пачки должен быть положительным");
+        }
+        this.factory = factory;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.thread = new Thread(this::run, "db-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Ставит операцию записи в очередь
+     * @param task операция, выполняемая на соединении писателя
+     * @return future с результатом операции или исключением SQLException
+     */
+    public <T> CompletableFuture<T> submit(WriteTask<T> task) {
+        PendingWrite<T> write = new PendingWrite<>(task);
+        synchronized (this) {
+            if (closed) {
+                write.future.completeExceptionally(new SQLException("Писатель базы данных остановлен"));
+                return write.future;
+            }
+            queue.add(write);
+        }
+        return write.future;
+    }
+
+    /**
+     * Регистрирует действие перед commit текущей пачки. Повторная регистрация с тем же ключом
+     * возвращает уже зарегистрированное действие, поэтому общая работа операций пачки
+     * (например, пересчет затронутых дней) выполняется один раз на транзакцию.
+     * Вызывается только из операции, выполняемой писателем; ошибка действия отменяет всю пачку.
+     */
+    public <H extends CommitHook> H beforeCommit(Object key, Supplier<H> factory) {
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("Действие перед commit регистрируется только из операции записи");
+        }
+        @SuppressWarnings("unchecked")
+        H hook = (H) commitHooks.computeIfAbsent(key, k -> factory.get());
+        return hook;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * Среднее количество операций на одну транзакцию
+     */
+    public double getAverageBatchSize() {
+        long commits = commitCount.get();
+        return commits == 0 ? 0.0 : (completedCount.get() + failedCount.get()) / (double) commits;
+    }
+
+    /**
+     * Останавливает писателя после выполнения уже поставленных в очередь операций
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        Connection conn = null;
+        List<PendingWrite<?>> batch = new ArrayList<>(maxBatchSize);
+        try {
+            boolean running = true;
+            while (running) {
+                batch.clear();
+                running = collectBatch(batch);
+                if (batch.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    if (conn == null || conn.isClosed()) {
+                        conn = factory.create();
+                    }
+                } catch (SQLException e) {
+                    logger.log(Level.SEVERE, "Писатель не смог подключиться к базе данных", e);
+                    for (PendingWrite<?> write : batch) {
+                        write.future.completeExceptionally(e);
+                    }
+                    failedCount.addAndGet(batch.size());
+                    conn = null;
+                    continue;
+                }
+
+                executeBatch(conn, batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            failPending();
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    logger.log(Level.WARNING, "Ошибка при закрытии соединения писателя", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ждет первую операцию, затем добирает пачку в пределах окна и лимита размера
+     * @return false, если получен сигнал остановки
+     */
+    private boolean collectBatch(List<PendingWrite<?>> batch) throws InterruptedException {
+        PendingWrite<?> first = queue.take();
+        if (first == SHUTDOWN) {
+            return false;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + batchWindowNanos;
+        while (batch.size() < maxBatchSize) {
+            PendingWrite<?> next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+            }
+            if (next == SHUTDOWN) {
+                return false;
+            }
+            batch.add(next);
+        }
+        return true;
+    }
+
+    /**
+     * Выполняет пачку операций в одной транзакции.
+     * Future операций завершаются только после commit, чтобы успех означал сохраненные данные.
+     */
+    private void executeBatch(Connection conn, List<PendingWrite<?>> batch) {
+        List<Object> results = new ArrayList<>(batch.size());
+        List<Throwable> errors = new ArrayList<>(batch.size());
+        try {
+            conn.setAutoCommit(false);
+            for (PendingWrite<?> write : batch) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    results.add(write.task.execute(conn));
+                    errors.add(null);
+                    conn.releaseSavepoint(savepoint);
+                } catch (Throwable t) {
+                    logger.log(Level.WARNING, "Ошибка выполнения операции записи", t);
+                    conn.rollback(savepoint);
+                    results.add(null);
+                    errors.add(t);
+                }
+            }
+            // Действие может регистрировать другие действия, поэтому перебирается копия
+            while (!commitHooks.isEmpty()) {
+                List<CommitHook> hooks = new ArrayList<>(commitHooks.values());
+                commitHooks.clear();
+                for (CommitHook hook : hooks) {
+                    runCommitHook(conn, hook);
+                }
+            }
+            conn.commit();
+            commitCount.incrementAndGet();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Ошибка фиксации пачки из " + batch.size() + " операций", e);
+            for (PendingWrite<?> write : batch) {
+                write.future.completeExceptionally(e);
+            }
+            failedCount.addAndGet(batch.size());
+            return;
+        } finally {
+            commitHooks.clear();
+            restoreAutoCommit(conn);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), results.get(i), errors.get(i));
+        }
+    }
+
+    private static void runCommitHook(Connection conn, CommitHook hook) throws SQLException {
+        try {
+            hook.beforeCommit(conn);
+        } catch (RuntimeException e) {
+            throw new SQLException("Ошибка действия перед commit: " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void complete(PendingWrite<T> write, Object result, Throwable error) {
+        if (error == null) {
+            completedCount.incrementAndGet();
+            write.future.complete((T) result);
+        } else {
+            failedCount.incrementAndGet();
+            write.future.completeExceptionally(error);
+        }
+    }
+
+    // Операция могла оставить незавершенную транзакцию
+    private void restoreAutoCommit(Connection conn) {
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Не удалось восстановить режим autocommit", e);
+        }
+    }
+
+    private void failPending() {
+        PendingWrite<?> write;
+        while ((write = queue.poll()) != null) {
+            write.future.completeExceptionally(new SQLException("Писатель базы данных остановлен"));
+        }
+    }
+
+    private static class PendingWrite<T> {
+        private final WriteTask<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        PendingWrite(WriteTask<T> task) {
+            this.task = task;
+        }
+    }
+}
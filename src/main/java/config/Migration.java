@@ -0,0 +1,78 @@
+package config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Версия схемы базы данных: набор SQL-инструкций, применяемых в одной транзакции
+ */
+public class Migration {
+    /**
+     * Шаг миграции, который нельзя выразить SQL (например, заполнение двоичных эскизов);
+     * выполняется после инструкций в той же транзакции
+     */
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private final int version;
+    private final String description;
+    private final List<String> statements;
+    private final Step step;
+
+    /**
+     * @param version номер версии; версии применяются по возрастанию
+     * @param description описание для журнала и таблицы schema_version
+     * @param statementGroups группы SQL-инструкций в порядке выполнения
+     */
+    public Migration(int version, String description, String[]... statementGroups) {
+        this(version, description, null, statementGroups);
+    }
+
+    /**
+     * @param step шаг после SQL-инструкций или null
+     */
+    public Migration(int version, String description, Step step, String[]... statementGroups) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("Версия миграции должна быть положительной");
+        }
+        this.version = version;
+        this.description = description;
+        this.step = step;
+
+        List<String> all = new ArrayList<>();
+        for (String[] group : statementGroups) {
+            Collections.addAll(all, group);
+        }
+        this.statements = Collections.unmodifiableList(all);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public List<String> getStatements() {
+        return statements;
+    }
+
+    public Step getStep() {
+        return step;
+    }
+
+    @Override
+    public String toString() {
+        return "Migration{" +
+                "version=" + version +
+                ", description='" + description + '\'' +
+                ", statements=" + statements.size() +
+                '}';
+    }
+}
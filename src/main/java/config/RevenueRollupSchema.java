@@ -0,0 +1,130 @@
+package config;
+
+import util.DatabaseUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Схема сводной таблицы выручки revenue_rollup.
+ * Таблица хранит количество записей и выручку (в копейках) по дням, неделям и месяцам
+ * в разрезе типа услуги и механика. Ее поддерживают триггеры на service_records,
+ * поэтому она согласована с записями при любом способе изменения данных.
+ * Бакет обозначается датой его начала: день, понедельник недели или первое число месяца.
+ */
+public class RevenueRollupSchema {
+    public static final String GRANULARITY_DAY = "D";
+    public static final String GRANULARITY_WEEK = "W";
+    public static final String GRANULARITY_MONTH = "M";
+
+    public static final String DIMENSION_SERVICE_TYPE = "type";
+    public static final String DIMENSION_MECHANIC = "mechanic";
+
+    private static final String[] GRANULARITIES = {GRANULARITY_DAY, GRANULARITY_WEEK, GRANULARITY_MONTH};
+    private static final String[] DIMENSIONS = {DIMENSION_SERVICE_TYPE, DIMENSION_MECHANIC};
+
+    private static final String CREATE_TABLE_SQL = """
+    CREATE TABLE IF NOT EXISTS revenue_rollup (
+        dimension TEXT NOT NULL,
+        granularity TEXT NOT NULL,
+        bucket TEXT NOT NULL,
+        dim_key TEXT NOT NULL,
+        record_count INTEGER NOT NULL,
+        kopecks INTEGER NOT NULL,
+        PRIMARY KEY (dimension, granularity, bucket, dim_key)
+    ) WITHOUT ROWID
+    """;
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO revenue_rollup (dimension, granularity, bucket, dim_key, record_count, kopecks) " +
+                    "VALUES ('%s', '%s', %s, %s, %s, %s) " +
+                    "ON CONFLICT (dimension, granularity, bucket, dim_key) DO UPDATE SET " +
+                    "record_count = record_count + excluded.record_count, kopecks = kopecks + excluded.kopecks;";
+
+    private static final String BACKFILL_SQL =
+            "INSERT INTO revenue_rollup (dimension, granularity, bucket, dim_key, record_count, kopecks) " +
+                    "SELECT '%s', '%s', %s AS rollup_bucket, %s AS rollup_key, COUNT(*), SUM(%s) " +
+                    "FROM service_records r GROUP BY rollup_bucket, rollup_key";
+
+    /**
+     * Инструкции миграции: таблица, триггеры и заполнение по существующим записям
+     */
+    public static String[] createStatements() {
+        List<String> statements = new ArrayList<>();
+        statements.add(CREATE_TABLE_SQL);
+
+        statements.add("CREATE TRIGGER trg_revenue_rollup_insert AFTER INSERT ON service_records BEGIN\n" +
+                upserts("NEW", 1) + "END");
+        statements.add("CREATE TRIGGER trg_revenue_rollup_delete AFTER DELETE ON service_records BEGIN\n" +
+                upserts("OLD", -1) + "END");
+        statements.add("CREATE TRIGGER trg_revenue_rollup_update " +
+                "AFTER UPDATE OF date, service_type, assigned_mechanic_id, cost ON service_records BEGIN\n" +
+                upserts("OLD", -1) + upserts("NEW", 1) + "END");
+
+        Collections.addAll(statements, backfillStatements());
+        return statements.toArray(new String[0]);
+    }
+
+    /**
+     * Заполнение сводной таблицы по существующим записям одним запросом на разрез и гранулярность;
+     * таблица должна быть пустой
+     */
+    public static String[] backfillStatements() {
+        List<String> statements = new ArrayList<>();
+        for (String dimension : DIMENSIONS) {
+            for (String granularity : GRANULARITIES) {
+                statements.add(String.format(BACKFILL_SQL, dimension, granularity,
+                        bucketExpression(granularity, "r"), keyExpression(dimension, "r"), kopecksExpression("r")));
+            }
+        }
+        return statements.toArray(new String[0]);
+    }
+
+    /**
+     * SQL-выражение начала бакета для даты записи
+     * @param row псевдоним строки service_records (NEW, OLD или псевдоним таблицы)
+     */
+    static String bucketExpression(String granularity, String row) {
+        String day = DatabaseUtil.dayExpression(row + ".date");
+        switch (granularity) {
+            case GRANULARITY_DAY:
+                return day;
+            case GRANULARITY_WEEK:
+                return "date(" + day + ", '-6 days', 'weekday 1')";
+            case GRANULARITY_MONTH:
+                return "date(" + day + ", 'start of month')";
+            default:
+                throw new IllegalArgumentException("Неизвестная гранулярность: " + granularity);
+        }
+    }
+
+    // Значение разреза; NULL заменяется пустой строкой, так как столбец входит в первичный ключ
+    private static String keyExpression(String dimension, String row) {
+        switch (dimension) {
+            case DIMENSION_SERVICE_TYPE:
+                return "COALESCE(" + row + ".service_type, '')";
+            case DIMENSION_MECHANIC:
+                return "COALESCE(CAST(" + row + ".assigned_mechanic_id AS TEXT), '')";
+            default:
+                throw new IllegalArgumentException("Неизвестный разрез: " + dimension);
+        }
+    }
+
+    private static String kopecksExpression(String row) {
+        return "CAST(ROUND(" + row + ".cost * 100) AS INTEGER)";
+    }
+
+    private static String upserts(String row, int sign) {
+        StringBuilder sql = new StringBuilder();
+        String prefix = sign < 0 ? "-" : "";
+        for (String dimension : DIMENSIONS) {
+            for (String granularity : GRANULARITIES) {
+                sql.append(String.format(UPSERT_SQL, dimension, granularity,
+                        bucketExpression(granularity, row), keyExpression(dimension, row),
+                        sign, prefix + kopecksExpression(row))).append('\n');
+            }
+        }
+        return sql.toString();
+    }
+}
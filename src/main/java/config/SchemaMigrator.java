@@ -0,0 +1,137 @@
+package config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Применяет версионные миграции схемы.
+ * Примененные версии хранятся в таблице schema_version; если схема актуальна,
+ * при запуске выполняется только один запрос без DDL.
+ */
+public class SchemaMigrator {
+    private static final Logger logger = Logger.getLogger(SchemaMigrator.class.getName());
+
+    private static final String CHECK_VERSION_TABLE_SQL =
+            "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'schema_version'";
+
+    private static final String CREATE_VERSION_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "description TEXT NOT NULL, " +
+                    "duration_ms INTEGER NOT NULL, " +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final String GET_CURRENT_VERSION_SQL =
+            "SELECT COALESCE(MAX(version), 0) FROM schema_version";
+
+    private static final String INSERT_VERSION_SQL =
+            "INSERT INTO schema_version (version, description, duration_ms) VALUES (?, ?, ?)";
+
+    private final List<Migration> migrations;
+
+    /**
+     * @param migrations миграции, упорядоченные по возрастанию версии
+     */
+    public SchemaMigrator(List<Migration> migrations) {
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).getVersion() <= migrations.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Миграции должны идти по возрастанию версии");
+            }
+        }
+        this.migrations = migrations;
+    }
+
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+    }
+
+    /**
+     * Применяет все миграции новее текущей версии схемы, каждую в своей транзакции
+     * @return количество примененных миграций
+     */
+    public int migrate(Connection conn) throws SQLException {
+        int current = getCurrentVersion(conn);
+        if (current >= getLatestVersion()) {
+            logger.log(Level.INFO, "Схема базы данных актуальна (версия {0})", current);
+            return 0;
+        }
+
+        int applied = 0;
+        for (Migration migration : migrations) {
+            if (migration.getVersion() > current) {
+                apply(conn, migration);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(CHECK_VERSION_TABLE_SQL)) {
+                if (rs.next() && rs.getInt(1) == 0) {
+                    stmt.execute(CREATE_VERSION_TABLE_SQL);
+                    return 0;
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(GET_CURRENT_VERSION_SQL)) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void apply(Connection conn, Migration migration) throws SQLException {
+        logger.log(Level.INFO, "Применение миграции {0}: {1}",
+                new Object[]{migration.getVersion(), migration.getDescription()});
+        long start = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            int step = 0;
+            for (String sql : migration.getStatements()) {
+                step++;
+                long stepStart = System.nanoTime();
+                stmt.execute(sql);
+                logger.log(Level.INFO, "  шаг {0}/{1}: {2} мс - {3}", new Object[]{
+                        step, migration.getStatements().size(), elapsedMillis(stepStart), abbreviate(sql)});
+            }
+            if (migration.getStep() != null) {
+                long stepStart = System.nanoTime();
+                migration.getStep().apply(conn);
+                logger.log(Level.INFO, "  заполнение данных: {0} мс", elapsedMillis(stepStart));
+            }
+
+            long duration = elapsedMillis(start);
+            try (PreparedStatement insert = conn.prepareStatement(INSERT_VERSION_SQL)) {
+                insert.setInt(1, migration.getVersion());
+                insert.setString(2, migration.getDescription());
+                insert.setLong(3, duration);
+                insert.executeUpdate();
+            }
+            conn.commit();
+            logger.log(Level.INFO, "Миграция {0} применена за {1} мс",
+                    new Object[]{migration.getVersion(), elapsedMillis(start)});
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Ошибка миграции " + migration.getVersion() + ": " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static String abbreviate(String sql) {
+        String compact = sql.strip().replaceAll("\\s+", " ");
+        return compact.length() <= 80 ? compact : compact.substring(0, 77) + "...";
+    }
+}
@@ -0,0 +1,261 @@
+package config;
+
+import util.HyperLogLog;
+import util.QuantileSketch;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Схема и поддержка дневных эскизов analytics_sketches: HyperLogLog различных клиентов
+ * и госномеров и эскизы квантилей стоимости по типам услуг.
+ * Эскизы двоичные, поэтому их нельзя поддерживать триггерами, как revenue_rollup.
+ * Операции записи только отмечают добавленные записи и дни измененных и удаленных записей,
+ * а эскизы обновляются один раз в конце пачки писателя: новые записи добавляются в сохраненные
+ * эскизы своего дня одним чтением и одной записью на день, отмеченные дни пересчитываются.
+ */
+public class SketchSchema {
+    public static final String KIND_CLIENTS = "clients";
+    public static final String KIND_PLATES = "plates";
+    public static final String KIND_COST = "cost";
+
+    private static final String CREATE_TABLE_SQL = """
+    CREATE TABLE IF NOT EXISTS analytics_sketches (
+        day TEXT NOT NULL,
+        kind TEXT NOT NULL,
+        dim_key TEXT NOT NULL,
+        data BLOB NOT NULL,
+        PRIMARY KEY (day, kind, dim_key)
+    ) WITHOUT ROWID
+    """;
+
+    private static final String RECORDS_BY_ID_SQL =
+            "SELECT date, client_phone, license_plate, service_type, cost FROM service_records WHERE id IN (%s)";
+    private static final String DAY_RECORDS_SQL =
+            "SELECT date, client_phone, license_plate, service_type, cost FROM service_records WHERE date = ?";
+    private static final String RANGE_RECORDS_SQL =
+            "SELECT date, client_phone, license_plate, service_type, cost FROM service_records " +
+                    "WHERE date BETWEEN ? AND ? ORDER BY date";
+    private static final String GET_DAY_SQL = "SELECT kind, dim_key, data FROM analytics_sketches WHERE day = ?";
+    private static final String DELETE_DAY_SQL = "DELETE FROM analytics_sketches WHERE day = ?";
+    private static final String DELETE_RANGE_SQL = "DELETE FROM analytics_sketches WHERE day BETWEEN ? AND ?";
+    private static final String SAVE_SKETCH_SQL =
+            "INSERT OR REPLACE INTO analytics_sketches (day, kind, dim_key, data) VALUES (?, ?, ?, ?)";
+
+    // Сколько id добавленных записей читается одним запросом
+    private static final int ID_CHUNK_SIZE = 500;
+
+    // Границы «всей истории» для полной перестройки
+    public static final LocalDate MIN_DAY = LocalDate.of(1970, 1, 1);
+    public static final LocalDate MAX_DAY = LocalDate.of(9999, 12, 31);
+
+    /**
+     * Инструкции миграции: таблица эскизов
+     */
+    public static String[] createStatements() {
+        return new String[]{CREATE_TABLE_SQL};
+    }
+
+    /**
+     * Заполнение эскизов по всей истории записей (шаг миграции)
+     */
+    public static void backfill(Connection conn) throws SQLException {
+        rebuild(conn, MIN_DAY, MAX_DAY);
+    }
+
+    /**
+     * Отмечает добавленную запись; перед commit текущей пачки писателя значения всех добавленных
+     * записей дня объединяются с его сохраненными эскизами. Вызывается из операции записи.
+     * Запись перечитывается по id, поэтому вставка, отмененная откатом операции, не учитывается.
+     */
+    public static void markRecordAdded(int recordId) {
+        pending().addedIds.add(recordId);
+    }
+
+    /**
+     * Отмечает дни измененных или удаленных записей; эскизы этих дней пересчитываются
+     * один раз перед commit текущей пачки писателя. Вызывается из операции записи.
+     */
+    public static void markDaysChanged(Collection<LocalDate> days) {
+        pending().changedDays.addAll(days);
+    }
+
+    private static PendingSketches pending() {
+        return DatabaseConfig.getWriter().beforeCommit(PendingSketches.class, PendingSketches::new);
+    }
+
+    /**
+     * Пересчитывает эскизы указанных дней по записям
+     */
+    public static void refreshDays(Connection conn, Collection<LocalDate> days) throws SQLException {
+        for (LocalDate day : new TreeSet<>(days)) {
+            try (PreparedStatement delete = conn.prepareStatement(DELETE_DAY_SQL)) {
+                delete.setString(1, day.toString());
+                delete.executeUpdate();
+            }
+            DaySketches sketches = new DaySketches(day);
+            try (PreparedStatement stmt = conn.prepareStatement(DAY_RECORDS_SQL)) {
+                stmt.setDate(1, Date.valueOf(day));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        sketches.add(rs);
+                    }
+                }
+            }
+            sketches.save(conn);
+        }
+    }
+
+    /**
+     * Перестраивает эскизы за период, границы включительно
+     */
+    public static void rebuild(Connection conn, LocalDate from, LocalDate to) throws SQLException {
+        try (PreparedStatement delete = conn.prepareStatement(DELETE_RANGE_SQL)) {
+            delete.setString(1, from.toString());
+            delete.setString(2, to.toString());
+            delete.executeUpdate();
+        }
+        // Записи читаются по порядку дат, в памяти только эскизы текущего дня
+        try (PreparedStatement stmt = conn.prepareStatement(RANGE_RECORDS_SQL)) {
+            stmt.setDate(1, Date.valueOf(from));
+            stmt.setDate(2, Date.valueOf(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                DaySketches current = null;
+                while (rs.next()) {
+                    LocalDate day = rs.getDate("date").toLocalDate();
+                    if (current == null || !current.day.equals(day)) {
+                        if (current != null) {
+                            current.save(conn);
+                        }
+                        current = new DaySketches(day);
+                    }
+                    current.add(rs);
+                }
+                if (current != null) {
+                    current.save(conn);
+                }
+            }
+        }
+    }
+
+    // Изменения эскизов пачки писателя, применяемые перед commit
+    private static class PendingSketches implements DatabaseWriter.CommitHook {
+        private final Set<Integer> addedIds = new LinkedHashSet<>();
+        private final TreeSet<LocalDate> changedDays = new TreeSet<>();
+
+        @Override
+        public void beforeCommit(Connection conn) throws SQLException {
+            // Пересчитанный день уже содержит добавленные в него записи
+            Map<LocalDate, DaySketches> added = new TreeMap<>();
+            List<Integer> ids = new ArrayList<>(addedIds);
+            for (int from = 0; from < ids.size(); from += ID_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + ID_CHUNK_SIZE, ids.size()));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                String sql = String.format(RECORDS_BY_ID_SQL, placeholders);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            LocalDate day = rs.getDate("date").toLocalDate();
+                            if (!changedDays.contains(day)) {
+                                added.computeIfAbsent(day, DaySketches::new).add(rs);
+                            }
+                        }
+                    }
+                }
+            }
+            for (DaySketches sketches : added.values()) {
+                sketches.mergeStored(conn);
+                sketches.save(conn);
+            }
+            refreshDays(conn, changedDays);
+        }
+    }
+
+    // Эскизы одного дня
+    private static class DaySketches {
+        private final LocalDate day;
+        private final HyperLogLog clients = new HyperLogLog();
+        private final HyperLogLog plates = new HyperLogLog();
+        private final Map<String, QuantileSketch> costByType = new HashMap<>();
+        private int records;
+
+        DaySketches(LocalDate day) {
+            this.day = day;
+        }
+
+        void add(ResultSet rs) throws SQLException {
+            add(rs.getString("client_phone"), rs.getString("license_plate"),
+                    rs.getString("service_type"), rs.getDouble("cost"));
+        }
+
+        void add(String clientPhone, String licensePlate, String serviceType, double cost) {
+            records++;
+            clients.add(clientPhone);
+            plates.add(licensePlate);
+            if (cost >= 0) {
+                costByType.computeIfAbsent(serviceType == null ? "" : serviceType, t -> new QuantileSketch())
+                        .add(cost);
+            }
+        }
+
+        // Объединяет с сохраненными эскизами дня
+        void mergeStored(Connection conn) throws SQLException {
+            try (PreparedStatement stmt = conn.prepareStatement(GET_DAY_SQL)) {
+                stmt.setString(1, day.toString());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String kind = rs.getString("kind");
+                        byte[] data = rs.getBytes("data");
+                        if (KIND_CLIENTS.equals(kind)) {
+                            clients.merge(HyperLogLog.fromBytes(data));
+                        } else if (KIND_PLATES.equals(kind)) {
+                            plates.merge(HyperLogLog.fromBytes(data));
+                        } else if (KIND_COST.equals(kind)) {
+                            costByType.computeIfAbsent(rs.getString("dim_key"), t -> new QuantileSketch())
+                                    .merge(QuantileSketch.fromBytes(data));
+                        }
+                    }
+                }
+            }
+        }
+
+        void save(Connection conn) throws SQLException {
+            if (records == 0) {
+                return;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(SAVE_SKETCH_SQL)) {
+                addRow(stmt, KIND_CLIENTS, "", clients.toBytes());
+                addRow(stmt, KIND_PLATES, "", plates.toBytes());
+                for (Map.Entry<String, QuantileSketch> entry : costByType.entrySet()) {
+                    addRow(stmt, KIND_COST, entry.getKey(), entry.getValue().toBytes());
+                }
+                stmt.executeBatch();
+            }
+        }
+
+        private void addRow(PreparedStatement stmt, String kind, String key, byte[] data) throws SQLException {
+            stmt.setString(1, day.toString());
+            stmt.setString(2, kind);
+            stmt.setString(3, key);
+            stmt.setBytes(4, data);
+            stmt.addBatch();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Кэш подготовленных запросов одного физического соединения.
+ * prepareStatement(sql) с уже встречавшимся текстом запроса возвращает ранее
+ * скомпилированный запрос, и SQLite не разбирает и не планирует его заново.
+ * close() у выданного запроса сбрасывает его состояние и возвращает его в кэш.
+ * Вытесняется давно не использованный запрос (LRU).
+ */
+public class StatementCache {
+    private static final Logger logger = Logger.getLogger(StatementCache.class.getName());
+
+    // Счетчики по всем соединениям процесса
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    private final Connection physicalConnection;
+    private final int capacity;
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    // Обертка соединения: ее возвращает getConnection() выданных запросов
+    private Connection connection;
+
+    private StatementCache(Connection physicalConnection, int capacity) {
+        this.physicalConnection = physicalConnection;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Оборачивает физическое соединение кэшем подготовленных запросов
+     * @param conn физическое соединение
+     * @param capacity максимальное количество запросов в кэше; 0 отключает кэш
+     */
+    public static Connection wrap(Connection conn, int capacity) {
+        if (capacity <= 0) {
+            return conn;
+        }
+        StatementCache cache = new StatementCache(conn, capacity);
+        cache.connection = (Connection) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                cache.new CachingConnectionHandler());
+        return cache.connection;
+    }
+
+    /**
+     * Возвращает снимок счетчиков кэша по всем соединениям
+     */
+    public static Metrics getMetrics() {
+        return new Metrics(hits.get(), misses.get(), evictions.get());
+    }
+
+    private synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.incrementAndGet();
+            cached.inUse = true;
+            return cached.lease();
+        }
+
+        misses.incrementAndGet();
+        PreparedStatement stmt = physicalConnection.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // Тот же запрос уже выдан (вложенное использование): этот экземпляр не кэшируется
+            return stmt;
+        }
+
+        evictIfFull();
+        cached = new CachedStatement(stmt);
+        cached.inUse = true;
+        statements.put(key, cached);
+        return cached.lease();
+    }
+
+    private void evictIfFull() {
+        if (statements.size() < capacity) {
+            return;
+        }
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (iterator.hasNext()) {
+            CachedStatement candidate = iterator.next();
+            if (!candidate.inUse) {
+                iterator.remove();
+                candidate.closeQuietly();
+                evictions.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private synchronized void release(CachedStatement cached) {
+        try {
+            // Настройки выполнения не должны переходить к следующему владельцу запроса
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+            cached.statement.clearWarnings();
+            cached.statement.setFetchSize(0);
+            cached.statement.setMaxRows(0);
+            cached.statement.setQueryTimeout(0);
+            cached.inUse = false;
+        } catch (SQLException e) {
+            // Запрос непригоден для повторного использования
+            statements.values().remove(cached);
+            cached.closeQuietly();
+        }
+    }
+
+    private synchronized void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            cached.closeQuietly();
+        }
+        statements.clear();
+    }
+
+    private class CachingConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("prepareStatement".equals(name) && args.length == 1) {
+                return prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+            }
+            if ("prepareStatement".equals(name) && args.length == 2 && args[1] instanceof Integer) {
+                return prepare((String) args[0], (Integer) args[1]);
+            }
+            if ("close".equals(name)) {
+                closeAll();
+            }
+            try {
+                return method.invoke(physicalConnection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement lease() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new LeaseHandler(this));
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "Ошибка при закрытии кэшированного запроса", e);
+            }
+        }
+    }
+
+    // Выдача кэшированного запроса вызывающему коду: close() возвращает запрос в кэш
+    private class LeaseHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed;
+
+        LeaseHandler(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(cached);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.statement.isClosed();
+                case "getConnection":
+                    // Закрытие физического соединения в обход кэша оставило бы в нем закрытые запросы
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (closed) {
+                        throw new SQLException("Запрос уже закрыт");
+                    }
+                    try {
+                        return method.invoke(cached.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /**
+     * Снимок счетчиков кэша подготовленных запросов
+     */
+    public static class Metrics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Metrics(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : hits / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return "StatementCache.Metrics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", hitRate=" + String.format("%.3f", getHitRate()) +
+                    '}';
+        }
+    }
+}
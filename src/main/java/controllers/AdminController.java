@@ -6,9 +6,11 @@ import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.GridPane;
+import models.Page;
 import models.User;
 
 import services.UserService;
+import util.BackgroundExecutor;
 import views.components.CustomAlert;
 
 public class AdminController {
@@ -24,8 +26,14 @@ public class AdminController {
     @FXML private Button addButton;
     @FXML private Button editButton;
     @FXML private Button toggleActiveButton;
+    @FXML private Button loadMoreButton;
 
     private final UserService userService = new UserService();
+    private final BackgroundExecutor executor = BackgroundExecutor.getInstance();
+
+    private static final int PAGE_SIZE = 100;
+    private String currentQuery = "";
+    private String nextPageToken;
 
     @FXML
     public void initialize() {
@@ -46,10 +54,46 @@ public class AdminController {
     }
 
     private void loadUsers() {
-        usersTable.setItems(FXCollections.observableArrayList(userService.getAllUsers()));
+        loadFirstPage("", progress -> userService.findPage(null, PAGE_SIZE));
+    }
+
+    /**
+     * Загружает первую страницу в фоне; более новый запрос отменяет предыдущий
+     */
+    private void loadFirstPage(String query, BackgroundExecutor.Work<Page<User>> work) {
+        executor.cancel("admin.loadMore");
+        executor.submitLatest("admin.users", work, page -> showFirstPage(query, page), this::showLoadError);
+    }
+
+    private void showFirstPage(String query, Page<User> page) {
+        currentQuery = query;
+        usersTable.setItems(FXCollections.observableArrayList(page.getItems()));
+        nextPageToken = page.getNextToken();
+        loadMoreButton.setDisable(nextPageToken == null);
         updateButtonsState();
     }
 
+    @FXML
+    private void handleLoadMore() {
+        if (nextPageToken == null) {
+            return;
+        }
+        String query = currentQuery;
+        String token = nextPageToken;
+        executor.submit("admin.loadMore", progress -> userService.searchPage(query, token, PAGE_SIZE), page -> {
+            usersTable.getItems().addAll(page.getItems());
+            nextPageToken = page.getNextToken();
+            loadMoreButton.setDisable(nextPageToken == null);
+        }, this::showLoadError);
+    }
+
+    private void showLoadError(Throwable error) {
+        new CustomAlert(Alert.AlertType.ERROR,
+                "Ошибка",
+                "Не удалось загрузить пользователей",
+                error.getMessage()).show();
+    }
+
     private void updateButtonsState() {
         User selected = usersTable.getSelectionModel().getSelectedItem();
         boolean hasSelection = selected != null;
@@ -130,7 +174,7 @@ public class AdminController {
         if (query.isEmpty()) {
             loadUsers();
         } else {
-            usersTable.setItems(FXCollections.observableArrayList(userService.searchUsers(query)));
+            loadFirstPage(query, progress -> userService.searchPage(query, null, PAGE_SIZE));
         }
     }
 
@@ -1,24 +1,42 @@
 package controllers;
 
+import config.AppConfig;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
+import models.Page;
 import models.ServiceRecord;
 import models.SparePart;
+import models.WorkSchedule;
+import services.BackupArchiveService;
+import services.BackupService;
 import services.DataService;
+import services.ExportMetrics;
 import services.ExportService;
-import services.StatisticsService;
+import services.RevenueRollupService;
+import services.ServiceAggregates;
+import services.SqlStatisticsService;
+import util.BackgroundExecutor;
 import util.DateUtil;
 import util.FileUtil;
 import views.components.CustomAlert;
 
-import java.io.IOException;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 import java.util.logging.Logger;
 
 public class ManagerController {
@@ -42,13 +60,25 @@ public class ManagerController {
     @FXML private DatePicker toDatePicker;
     @FXML private ComboBox<String> statusFilterCombo;
     @FXML private Button filterButton;
+    @FXML private Button loadMoreButton;
     @FXML private Button exportButton;
     @FXML private Button statsButton;
     @FXML private TextArea statsTextArea;
+    @FXML private ProgressBar taskProgressBar;
+    @FXML private Label taskStatusLabel;
 
     private final DataService dataService = new DataService();
-    private final StatisticsService statsService = new StatisticsService();
+    private final SqlStatisticsService sqlStatsService = new SqlStatisticsService();
+    private final RevenueRollupService revenueService = new RevenueRollupService();
     private final ExportService exportService = new ExportService();
+    private final BackupService backupService = new BackupService();
+    private final BackupArchiveService archiveService = new BackupArchiveService();
+    private final BackgroundExecutor executor = BackgroundExecutor.getInstance();
+
+    private static final int PAGE_SIZE = 200;
+    // Через сколько строк экспорта обновляется прогресс
+    private static final int EXPORT_PROGRESS_ROWS = 1000;
+    private String nextPageToken;
 
     @FXML
     public void initialize() {
@@ -95,23 +125,39 @@ public class ManagerController {
     }
 
     private void loadData() {
-        try {
-            LocalDate fromDate = fromDatePicker.getValue();
-            LocalDate toDate = toDatePicker.getValue();
-            String statusFilter = statusFilterCombo.getValue();
-
-            List<ServiceRecord> records = "Все".equals(statusFilter)
-                    ? dataService.getServiceRecordsByDateRange(fromDate, toDate)
-                    : dataService.getServiceRecordsByStatus(statusFilter).stream()
-                    .filter(r -> !r.getDate().isBefore(fromDate) && !r.getDate().isAfter(toDate))
-                    .collect(Collectors.toList());
-
-            recordsTable.setItems(FXCollections.observableArrayList(records));
-            partsTable.setItems(FXCollections.observableArrayList(dataService.getAllSpareParts()));
-        } catch (Exception e) {
-            logger.severe("Ошибка загрузки данных: " + e.getMessage());
-            showErrorAlert("Ошибка загрузки данных", e.getMessage());
-        }
+        LocalDate fromDate = fromDatePicker.getValue();
+        LocalDate toDate = toDatePicker.getValue();
+        String status = statusOrNull(statusFilterCombo.getValue());
+
+        // Страница, догружаемая по старому фильтру, больше не нужна
+        executor.cancel("manager.loadMore");
+        executor.submitLatest("manager.load", progress -> {
+            // Первая страница; остальные подгружаются по запросу
+            Page<ServiceRecord> page = dataService.getServiceRecordsPage(fromDate, toDate, status, null, PAGE_SIZE);
+            return new LoadedData(page, dataService.getAllSpareParts());
+        }, data -> {
+            recordsTable.setItems(FXCollections.observableArrayList(data.page.getItems()));
+            nextPageToken = data.page.getNextToken();
+            loadMoreButton.setDisable(nextPageToken == null);
+            partsTable.setItems(FXCollections.observableArrayList(data.parts));
+        }, error -> {
+            logger.severe("Ошибка загрузки данных: " + error.getMessage());
+            showErrorAlert("Ошибка загрузки данных", error.getMessage());
+        });
+    }
+
+    /**
+     * Открывает поток всех записей, подходящих под фильтр (для экспорта); поток нужно закрыть
+     */
+    private Stream<ServiceRecord> streamFilteredRecords(LocalDate fromDate, LocalDate toDate, String statusFilter)
+            throws SQLException {
+        return "Все".equals(statusFilter)
+                ? dataService.streamServiceRecordsByDateRange(fromDate, toDate)
+                : dataService.streamServiceRecordsByStatusAndDateRange(statusFilter, fromDate, toDate);
+    }
+
+    private static String statusOrNull(String statusFilter) {
+        return "Все".equals(statusFilter) ? null : statusFilter;
     }
 
     @FXML
@@ -120,83 +166,276 @@ public class ManagerController {
     }
 
     @FXML
-    private void handleExport() {
-        try {
-            String filePath = "reports/service_report_" + System.currentTimeMillis() + ".xlsx";
-            exportService.exportServiceRecordsToExcel(recordsTable.getItems(), filePath);
-            showInfoAlert("Экспорт завершен", "Файл сохранен: " + filePath);
-        } catch (IOException e) {
-            logger.severe("Ошибка экспорта: " + e.getMessage());
-            showErrorAlert("Ошибка экспорта", e.getMessage());
+    private void handleLoadMore() {
+        if (nextPageToken == null) {
+            return;
         }
+        LocalDate fromDate = fromDatePicker.getValue();
+        LocalDate toDate = toDatePicker.getValue();
+        String status = statusOrNull(statusFilterCombo.getValue());
+        String token = nextPageToken;
+
+        executor.submit("manager.loadMore",
+                progress -> dataService.getServiceRecordsPage(fromDate, toDate, status, token, PAGE_SIZE),
+                page -> {
+                    recordsTable.getItems().addAll(page.getItems());
+                    nextPageToken = page.getNextToken();
+                    loadMoreButton.setDisable(nextPageToken == null);
+                }, error -> {
+                    logger.severe("Ошибка загрузки данных: " + error.getMessage());
+                    showErrorAlert("Ошибка загрузки данных", error.getMessage());
+                });
+    }
+
+    @FXML
+    private void handleExport() {
+        String filePath = "reports/service_report_" + System.currentTimeMillis() + ".xlsx";
+        LocalDate fromDate = fromDatePicker.getValue();
+        LocalDate toDate = toDatePicker.getValue();
+        String statusFilter = statusFilterCombo.getValue();
+
+        // Повторное нажатие, пока идет экспорт, не запускает второй
+        Task<ExportMetrics> task = executor.submit("manager.export", progress -> {
+            long total = dataService.getServiceSummary(fromDate, toDate, statusOrNull(statusFilter)).getRecordCount();
+            AtomicLong done = new AtomicLong();
+            try (Stream<ServiceRecord> records = streamFilteredRecords(fromDate, toDate, statusFilter)) {
+                return exportService.exportServiceRecordsToExcel(records.peek(record -> {
+                    if (progress.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    long rows = done.incrementAndGet();
+                    if (rows % EXPORT_PROGRESS_ROWS == 0) {
+                        progress.update(rows, total);
+                        progress.message("Экспорт: " + rows + " из " + total);
+                    }
+                }), filePath);
+            }
+        }, metrics -> showInfoAlert("Экспорт завершен", "Файл сохранен: " + filePath
+                + "\nСтрок: " + metrics.getRows() + ", время: " + metrics.getElapsedMillis() + " мс"), error -> {
+            logger.severe("Ошибка экспорта: " + error.getMessage());
+            showErrorAlert("Ошибка экспорта", error.getMessage());
+        });
+        showProgress(task);
+    }
+
+    /**
+     * Выгрузка записей, запчастей и расписания в CSV формата CsvImportService.
+     * Строки идут из курсоров базы прямо в файлы, весь набор в памяти не хранится.
+     */
+    @FXML
+    private void handleExportCsv() {
+        Path dir = Paths.get("reports", "csv_" + System.currentTimeMillis());
+
+        Task<Path> task = executor.submit("manager.exportCsv", progress -> {
+            Files.createDirectories(dir);
+            progress.message("CSV: записи сервиса");
+            try (Stream<ServiceRecord> records = dataService.streamAllServiceRecords()) {
+                FileUtil.saveRecordsToCsv(records, dir.resolve("service_records.csv").toString());
+            }
+            progress.update(1, 3);
+            progress.message("CSV: запчасти");
+            try (Stream<SparePart> parts = dataService.streamAllSpareParts()) {
+                FileUtil.savePartsToCsv(parts, dir.resolve("spare_parts.csv").toString());
+            }
+            progress.update(2, 3);
+            progress.message("CSV: расписание работ");
+            try (Stream<WorkSchedule> schedule = dataService.streamAllWorkSchedules()) {
+                FileUtil.saveScheduleToCsv(schedule, dir.resolve("work_schedules.csv").toString());
+            }
+            progress.update(3, 3);
+            return dir;
+        }, path -> showInfoAlert("Экспорт CSV", "Файлы сохранены: " + path.toAbsolutePath()), error -> {
+            logger.severe("Ошибка экспорта CSV: " + error.getMessage());
+            showErrorAlert("Ошибка экспорта CSV", error.getMessage());
+        });
+        showProgress(task);
     }
 
     @FXML
     private void handleShowStatistics() {
-        try {
+        LocalDate fromDate = fromDatePicker.getValue();
+        LocalDate toDate = toDatePicker.getValue();
+        String status = statusOrNull(statusFilterCombo.getValue());
+
+        // Один источник на показатель: итоги периода - ServiceAggregates, выручка по типам и механикам -
+        // сводная таблица, запчасти и расписание - запросы SqlStatisticsService
+        executor.submitLatest("manager.stats", progress -> {
             StringBuilder stats = new StringBuilder();
-            List<ServiceRecord> records = recordsTable.getItems();
-            List<SparePart> parts = partsTable.getItems();
+            ServiceAggregates.Summary summary = dataService.getServiceSummary(fromDate, toDate, status);
 
             // Заголовок с датами
             stats.append(String.format("=== Статистика за период %s - %s ===%n%n",
-                    DateUtil.formatDate(fromDatePicker.getValue()),
-                    DateUtil.formatDate(toDatePicker.getValue())));
+                    DateUtil.formatDate(fromDate), DateUtil.formatDate(toDate)));
 
             // Статистика по услугам
-            appendServiceStatistics(stats, records);
+            appendServiceStatistics(stats, summary);
+
+            // Выручка из сводной таблицы
+            appendRevenueStatistics(stats, fromDate, toDate);
 
             // Статистика по запчастям
-            appendPartsStatistics(stats, parts);
+            appendPartsStatistics(stats);
 
-            statsTextArea.setText(stats.toString());
-        } catch (Exception e) {
-            logger.severe("Ошибка генерации статистики: " + e.getMessage());
-            showErrorAlert("Ошибка статистики", e.getMessage());
-        }
+            // Статистика расписания работ
+            appendWorkStatistics(stats, fromDate, toDate);
+
+            return stats.toString();
+        }, statsTextArea::setText, error -> {
+            logger.severe("Ошибка генерации статистики: " + error.getMessage());
+            showErrorAlert("Ошибка статистики", error.getMessage());
+        });
     }
 
-    private void appendServiceStatistics(StringBuilder stats, List<ServiceRecord> records) {
+    private void appendServiceStatistics(StringBuilder stats, ServiceAggregates.Summary summary) {
         stats.append("Услуги:\n")
-                .append("- Всего записей: ").append(records.size()).append("\n")
+                .append("- Всего записей: ").append(summary.getRecordCount()).append("\n")
                 .append("- Общая выручка: ").append(String.format("%.2f руб.%n",
-                        statsService.calculateTotalRevenue(records)))
+                        summary.getTotalRevenue()))
                 .append("- Средняя стоимость: ").append(String.format("%.2f руб.%n%n",
-                        statsService.calculateAverageServiceCost(records)));
+                        summary.getAverageCost()));
 
         stats.append("Распределение по типам услуг:\n");
-        statsService.countServicesByType(records).forEach((type, count) ->
+        summary.getCountByType().forEach((type, count) ->
                 stats.append("- ").append(type).append(": ").append(count).append("\n"));
         stats.append("\n");
     }
 
-    private void appendPartsStatistics(StringBuilder stats, List<SparePart> parts) {
+    // Сводная таблица хранит выручку по всем записям, фильтр по статусу к ней не применяется
+    private void appendRevenueStatistics(StringBuilder stats, LocalDate fromDate, LocalDate toDate) {
+        stats.append("Выручка по типам услуг (все статусы):\n");
+        revenueService.getRevenueByServiceType(fromDate, toDate).forEach((type, revenue) ->
+                stats.append("- ").append(type).append(": ").append(String.format("%.2f руб.%n", revenue)));
+
+        stats.append("Выручка по механикам (все статусы):\n");
+        revenueService.getRevenueByMechanic(fromDate, toDate).forEach((mechanicId, revenue) ->
+                stats.append("- ").append(mechanicId == 0 ? "Без механика" : "Механик #" + mechanicId)
+                        .append(": ").append(String.format("%.2f руб.%n", revenue)));
+        stats.append("\n");
+    }
+
+    // Запчасти считаются в базе по всему складу
+    private void appendPartsStatistics(StringBuilder stats) {
+        Map<String, Long> bySupplier = sqlStatsService.countPartsBySupplier();
+        long total = bySupplier.values().stream().mapToLong(Long::longValue).sum();
         stats.append("Запчасти:\n")
-                .append("- Всего позиций: ").append(parts.size()).append("\n");
+                .append("- Всего позиций: ").append(total).append("\n");
 
-        List<SparePart> lowStock = statsService.findLowStockParts(parts);
+        List<SparePart> lowStock = sqlStatsService.findLowStockParts();
         if (!lowStock.isEmpty()) {
             stats.append("- Недостаток запаса (").append(lowStock.size()).append("):\n");
             lowStock.forEach(part ->
                     stats.append("  - ").append(part.getName())
                             .append(" (остаток: ").append(part.getQuantity()).append(")\n"));
         }
+
+        stats.append("- По поставщикам:\n");
+        bySupplier.forEach((supplier, count) ->
+                stats.append("  - ").append(supplier).append(": ").append(count).append("\n"));
+        stats.append("\n");
+    }
+
+    // Расписание работ группируется в базе, записи расписания в Java не загружаются
+    private void appendWorkStatistics(StringBuilder stats, LocalDate fromDate, LocalDate toDate) {
+        stats.append("Расписание работ:\n");
+
+        stats.append("- По механикам:\n");
+        sqlStatsService.countWorkByMechanic(fromDate, toDate).forEach((mechanicId, count) ->
+                stats.append("  - Механик #").append(mechanicId).append(": ").append(count).append("\n"));
+
+        stats.append("- По статусам:\n");
+        sqlStatsService.countWorkByStatus(fromDate, toDate).forEach((workStatus, count) ->
+                stats.append("  - ").append(workStatus).append(": ").append(count).append("\n"));
+
+        stats.append("- По дням:\n");
+        sqlStatsService.countWorkByDate(fromDate, toDate).forEach((day, count) ->
+                stats.append("  - ").append(DateUtil.formatDate(day)).append(": ").append(count).append("\n"));
     }
 
     @FXML
     private void handleCreateBackup() {
-        try {
-            FileUtil.createBackup(
-                    dataService.getAllServiceRecords(),
-                    dataService.getAllSpareParts(),
-                    dataService.getAllWorkSchedules(),
-                    "backups"
-            );
-            showInfoAlert("Резервная копия", "Данные успешно сохранены в папку backups");
-        } catch (IOException e) {
-            logger.severe("Ошибка резервного копирования: " + e.getMessage());
-            showErrorAlert("Ошибка резервного копирования", e.getMessage());
+        Task<BackupService.Result> task = executor.submit("manager.backup", progress -> {
+            progress.message("Резервное копирование...");
+            return backupService.createBackup((table, rows) ->
+                    progress.message("Резервная копия: " + table + ", строк: " + rows));
+        }, result -> {
+            String kind = result.getKind() == BackupService.Kind.FULL ? "Полная" : "Инкрементная";
+            showInfoAlert("Резервная копия", kind + " копия сохранена: " + result.getFile());
+        }, error -> {
+            logger.severe("Ошибка резервного копирования: " + error.getMessage());
+            showErrorAlert("Ошибка резервного копирования", error.getMessage());
+        });
+        showProgress(task);
+    }
+
+    // Результат загрузки для таблиц записей и запчастей
+    private static class LoadedData {
+        private final Page<ServiceRecord> page;
+        private final List<SparePart> parts;
+
+        LoadedData(Page<ServiceRecord> page, List<SparePart> parts) {
+            this.page = page;
+            this.parts = parts;
+        }
+    }
+
+    @FXML
+    private void handleCreateArchive() {
+        Task<BackupArchiveService.Result> task = executor.submit("manager.archive",
+                progress -> archiveService.createArchive((table, rows) ->
+                        progress.message("Архив: " + table + ", строк: " + rows)),
+                result -> showInfoAlert("Архив резервной копии", String.format(
+                        "Архив сохранен: %s%nСтрок: %d, %d мс", result.getFile(), result.getTotalRows(),
+                        result.getElapsedMillis())),
+                error -> {
+                    logger.severe("Ошибка создания архива: " + error.getMessage());
+                    showErrorAlert("Ошибка создания архива", error.getMessage());
+                });
+        showProgress(task);
+    }
+
+    @FXML
+    private void handleRestoreArchive() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Архив резервной копии");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Архив", "*.zip"));
+        File backupDir = new File(AppConfig.getBackupDirectory());
+        if (backupDir.isDirectory()) {
+            chooser.setInitialDirectory(backupDir);
+        }
+        File file = chooser.showOpenDialog(recordsTable.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        Optional<ButtonType> answer = new CustomAlert(Alert.AlertType.CONFIRMATION, "Восстановление",
+                "Заменить данные содержимым архива?",
+                "Все записи, запчасти, пользователи и расписание будут заменены данными из " + file.getName()
+                        + ". Учётные записи, включая текущую, будут удалены и загружены из архива:"
+                        + " если вашей учётной записи в архиве нет, войти под ней больше не получится.")
+                .showAndWait();
+        if (answer.isEmpty() || answer.get() != ButtonType.OK) {
+            return;
         }
+
+        Task<BackupArchiveService.Result> task = executor.submit("manager.restore",
+                progress -> archiveService.restoreArchive(file.toPath(), (table, rows) ->
+                        progress.message("Восстановление: " + table + ", строк: " + rows)),
+                result -> {
+                    showInfoAlert("Восстановление завершено", String.format("Строк: %d, %d мс",
+                            result.getTotalRows(), result.getElapsedMillis()));
+                    loadData();
+                },
+                error -> {
+                    logger.severe("Ошибка восстановления: " + error.getMessage());
+                    showErrorAlert("Ошибка восстановления", error.getMessage());
+                });
+        showProgress(task);
+    }
+
+    // Прогресс фоновой задачи в строке состояния; индикатор виден, пока задача выполняется
+    private void showProgress(Task<?> task) {
+        taskProgressBar.progressProperty().bind(task.progressProperty());
+        taskProgressBar.visibleProperty().bind(task.runningProperty());
+        taskStatusLabel.textProperty().bind(task.messageProperty());
     }
 
     private void showInfoAlert(String title, String message) {
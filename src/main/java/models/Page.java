@@ -0,0 +1,41 @@
+package models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Страница результатов с токеном продолжения для keyset-пагинации.
+ * Токен непрозрачен для вызывающего кода: его нужно передать в следующий запрос как есть.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextToken;
+
+    public Page(List<T> items, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return токен следующей страницы или null, если это последняя страница
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "size=" + items.size() +
+                ", hasMore=" + hasMore() +
+                '}';
+    }
+}
@@ -182,4 +182,11 @@ public class WorkSchedule {
     public int getMechanicId() {
         return this.mechanicId;
     }
+
+    public void setMechanic(int mechanicId) {
+        if (mechanicId <= 0) {
+            throw new IllegalArgumentException("ID механика должен быть положительным");
+        }
+        this.mechanicId = mechanicId;
+    }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import config.DatabaseConfig;
+import util.BackgroundExecutor;
 
 public class Main extends Application {
     @Override
@@ -29,6 +30,13 @@ public class Main extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        // Фоновые задачи отменяются и завершаются до закрытия пула соединений с БД
+        BackgroundExecutor.shutdown();
+        DatabaseConfig.shutdown();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,542 @@
+package services;
+
+import config.AppConfig;
+import config.BackupSchema;
+import config.RevenueRollupSchema;
+import util.CsvReader;
+import util.CsvWriter;
+import util.DatabaseUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Архив резервной копии: CSV каждой таблицы BackupSchema.TABLES и манифест в одном zip.
+ * База сначала копируется во временный снимок (VACUUM INTO), затем таблицы выгружаются
+ * из снимка параллельно, каждая в своем потоке и через свое соединение только для чтения.
+ * Поэтому архив согласован, а писатель не ждет. Каждая таблица сжимается gzip в своем потоке
+ * и вкладывается в zip без повторного сжатия. Манифест хранит количество строк и SHA-256
+ * несжатого CSV; восстановление сверяет суммы до изменения данных и загружает строки пачками.
+ */
+public class BackupArchiveService {
+    private static final Logger logger = Logger.getLogger(BackupArchiveService.class.getName());
+
+    /**
+     * Слушатель прогресса; при создании архива вызывается из рабочих потоков выгрузки,
+     * при восстановлении - из потока писателя
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(String table, long rows);
+    }
+
+    private static final String MANIFEST_ENTRY = "manifest.properties";
+    private static final String FORMAT_VERSION = "1";
+    private static final String TABLE_ENTRY_SUFFIX = ".csv.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_ROWS = 10_000;
+    private static final int RESTORE_BATCH_SIZE = 1000;
+    private static final DateTimeFormatter FILE_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+    private static final Pattern INTEGER = Pattern.compile("-?\\d{1,18}");
+
+    private final Path backupDir;
+
+    public BackupArchiveService() {
+        this(Paths.get(AppConfig.getBackupDirectory()));
+    }
+
+    public BackupArchiveService(Path backupDir) {
+        this.backupDir = backupDir;
+    }
+
+    public Result createArchive() throws IOException, SQLException {
+        return createArchive(null);
+    }
+
+    /**
+     * Создает архив backups/archive_yyyyMMdd_HHmmss.zip
+     */
+    public Result createArchive(ProgressListener listener) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Files.createDirectories(backupDir);
+        Path target = backupDir.resolve("archive_" + LocalDateTime.now().format(FILE_STAMP) + ".zip");
+        Path work = Files.createTempDirectory(backupDir, "archive_");
+        Path snapshot = work.resolve("snapshot.db");
+
+        Map<String, Long> rows = new LinkedHashMap<>();
+        try {
+            BackupService.snapshot(snapshot);
+
+            List<TableDump> dumps = dumpTables(snapshot, work, listener);
+            writeArchive(target, dumps);
+            for (TableDump dump : dumps) {
+                rows.put(dump.table, dump.rows);
+            }
+        } catch (IOException | SQLException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        } finally {
+            deleteDirectory(work);
+        }
+
+        Result result = new Result(target, rows, Files.size(target), System.nanoTime() - start);
+        logger.info("Архив резервной копии: " + result);
+        return result;
+    }
+
+    public Result restoreArchive(Path archive) throws IOException, SQLException {
+        return restoreArchive(archive, null);
+    }
+
+    /**
+     * Восстанавливает таблицы из архива, заменяя их текущее содержимое.
+     * Все таблицы загружаются одной задачей писателя: при любой ошибке база не меняется.
+     * После восстановления следующая резервная копия будет полной.
+     */
+    public Result restoreArchive(Path archive, ProgressListener listener) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Map<String, Long> rows;
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            Properties manifest = readManifest(zip);
+            List<String> tables = Arrays.asList(manifest.getProperty("tables").split(","));
+
+            // Контрольные суммы сверяются до изменения данных
+            for (String table : tables) {
+                verify(zip, manifest, table);
+            }
+
+            try {
+                rows = DatabaseUtil.write(conn -> loadTables(conn, zip, manifest, tables, listener)).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw e;
+            }
+        }
+
+        // Кэши и производные данные построены по прежнему содержимому
+        DataService.invalidateCaches();
+        new SketchAnalyticsService().rebuildSketches(null, null).join();
+
+        Result result = new Result(archive, rows, Files.size(archive), System.nanoTime() - start);
+        logger.info("Восстановление из архива: " + result);
+        return result;
+    }
+
+    private List<TableDump> dumpTables(Path snapshot, Path work, ProgressListener listener)
+            throws IOException, SQLException {
+        List<String> tables = BackupSchema.TABLES;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(tables.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<TableDump>> futures = new ArrayList<>();
+            for (String table : tables) {
+                futures.add(executor.submit(() ->
+                        dumpTable(snapshot, table, work.resolve(table + TABLE_ENTRY_SUFFIX), listener)));
+            }
+            List<TableDump> dumps = new ArrayList<>();
+            for (Future<TableDump> future : futures) {
+                dumps.add(future.get());
+            }
+            return dumps;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Создание архива прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IOException("Ошибка выгрузки таблицы: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Выгружает таблицу в CSV со сжатием gzip; SHA-256 считается по несжатому CSV, CRC32 - по файлу для zip
+    private static TableDump dumpTable(Path snapshot, String table, Path file, ProgressListener listener)
+            throws IOException, SQLException {
+        MessageDigest digest = sha256();
+        CRC32 crc = new CRC32();
+        long rows = 0;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + snapshot.toAbsolutePath());
+             Statement pragma = conn.createStatement()) {
+            pragma.execute("PRAGMA query_only = ON");
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM " + table + " ORDER BY id");
+                 ResultSet rs = stmt.executeQuery();
+                 CsvWriter csv = new CsvWriter(new BufferedWriter(new OutputStreamWriter(
+                         new DigestOutputStream(new GZIPOutputStream(new CheckedOutputStream(
+                                 new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE), crc),
+                                 BUFFER_SIZE), digest), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnCount = meta.getColumnCount();
+                for (int i = 1; i <= columnCount; i++) {
+                    csv.value(meta.getColumnName(i));
+                }
+                csv.endRow();
+
+                while (rs.next()) {
+                    for (int i = 1; i <= columnCount; i++) {
+                        writeValue(csv, rs.getObject(i));
+                    }
+                    csv.endRow();
+                    if (++rows % PROGRESS_ROWS == 0 && listener != null) {
+                        listener.onProgress(table, rows);
+                    }
+                }
+            }
+        }
+        if (listener != null) {
+            listener.onProgress(table, rows);
+        }
+        return new TableDump(table, file, rows, BackupService.appendHex(new StringBuilder(64), digest.digest()).toString(), crc.getValue());
+    }
+
+    // Строки в кавычках, числа и BLOB (X'..') без кавычек, NULL - пустым полем
+    private static void writeValue(CsvWriter csv, Object value) {
+        if (value == null) {
+            csv.value((String) null);
+        } else if (value instanceof Number) {
+            csv.value(value.toString());
+        } else if (value instanceof byte[]) {
+            csv.value(BackupService.appendHex(new StringBuilder("X'"), (byte[]) value).append('\'').toString());
+        } else {
+            csv.quoted(value.toString());
+        }
+    }
+
+    // Сжатые таблицы вкладываются без повторного сжатия, манифест - последним
+    private static void writeArchive(Path target, List<TableDump> dumps) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("format", FORMAT_VERSION);
+        manifest.setProperty("created", LocalDateTime.now().toString());
+        List<String> tables = new ArrayList<>();
+
+        try (ZipOutputStream zip = new ZipOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE))) {
+            for (TableDump dump : dumps) {
+                long size = Files.size(dump.file);
+                ZipEntry entry = new ZipEntry(dump.table + TABLE_ENTRY_SUFFIX);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                entry.setCrc(dump.crc);
+                zip.putNextEntry(entry);
+                Files.copy(dump.file, zip);
+                zip.closeEntry();
+
+                tables.add(dump.table);
+                manifest.setProperty(dump.table + ".rows", String.valueOf(dump.rows));
+                manifest.setProperty(dump.table + ".sha256", dump.sha256);
+            }
+            manifest.setProperty("tables", String.join(",", tables));
+
+            zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+            manifest.store(zip, "Autoservice backup archive");
+            zip.closeEntry();
+        }
+    }
+
+    private static Properties readManifest(ZipFile zip) throws IOException {
+        ZipEntry entry = zip.getEntry(MANIFEST_ENTRY);
+        if (entry == null) {
+            throw new IOException("В архиве нет манифеста");
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = zip.getInputStream(entry)) {
+            manifest.load(in);
+        }
+        if (!FORMAT_VERSION.equals(manifest.getProperty("format"))) {
+            throw new IOException("Неподдерживаемая версия архива: " + manifest.getProperty("format"));
+        }
+        for (String table : manifest.getProperty("tables", "").split(",")) {
+            if (!BackupSchema.TABLES.contains(table)) {
+                throw new IOException("Неизвестная таблица в архиве: " + table);
+            }
+        }
+        return manifest;
+    }
+
+    private static void verify(ZipFile zip, Properties manifest, String table) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(openTable(zip, table), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String actual = BackupService.appendHex(new StringBuilder(64), digest.digest()).toString();
+        if (!actual.equals(manifest.getProperty(table + ".sha256"))) {
+            throw new IOException("Контрольная сумма таблицы " + table + " не совпадает с манифестом");
+        }
+    }
+
+    private static Map<String, Long> loadTables(Connection conn, ZipFile zip, Properties manifest,
+                                                List<String> tables, ProgressListener listener)
+            throws SQLException {
+        Map<String, Long> rows = new LinkedHashMap<>();
+        // Триггеры таблиц (журнал изменений, сводная выручка) снимаются на время загрузки:
+        // журнал все равно очищается, а сводная таблица заполняется заново набором запросов
+        List<String> triggers = dropTriggers(conn, tables);
+        try (Statement stmt = conn.createStatement()) {
+            // Ссылки проверяются в конце транзакции, когда загружены все таблицы
+            stmt.execute("PRAGMA defer_foreign_keys = ON");
+            List<String> reversed = new ArrayList<>(tables);
+            Collections.reverse(reversed);
+            for (String table : reversed) {
+                stmt.executeUpdate("DELETE FROM " + table);
+            }
+        }
+        for (String table : tables) {
+            try (CsvReader reader = new CsvReader(new InputStreamReader(openTable(zip, table), StandardCharsets.UTF_8))) {
+                rows.put(table, loadTable(conn, reader, table, listener));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // Расхождение с манифестом отменяет всю загрузку: операция писателя откатывается
+            long expected = Long.parseLong(manifest.getProperty(table + ".rows", "-1"));
+            if (rows.get(table) != expected) {
+                throw new SQLException("Таблица " + table + ": загружено строк " + rows.get(table)
+                        + ", в манифесте " + expected);
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : triggers) {
+                stmt.execute(sql);
+            }
+            stmt.executeUpdate("DELETE FROM revenue_rollup");
+            for (String sql : RevenueRollupSchema.backfillStatements()) {
+                stmt.executeUpdate(sql);
+            }
+            // Цепочка инкрементных копий начинается заново с полной копии
+            stmt.executeUpdate("DELETE FROM backup_changes");
+            stmt.executeUpdate("DELETE FROM backup_log");
+        }
+        return rows;
+    }
+
+    /**
+     * Удаляет триггеры таблиц в транзакции писателя
+     * @return инструкции для их восстановления
+     */
+    private static List<String> dropTriggers(Connection conn, List<String> tables) throws SQLException {
+        List<String> names = new ArrayList<>();
+        List<String> definitions = new ArrayList<>();
+        String sql = "SELECT name, sql FROM sqlite_master WHERE type = 'trigger' AND tbl_name IN (" +
+                String.join(", ", Collections.nCopies(tables.size(), "?")) + ")";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < tables.size(); i++) {
+                stmt.setString(i + 1, tables.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString("name"));
+                    definitions.add(rs.getString("sql"));
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String name : names) {
+                stmt.execute("DROP TRIGGER \"" + name + "\"");
+            }
+        }
+        return definitions;
+    }
+
+    private static long loadTable(Connection conn, CsvReader reader, String table, ProgressListener listener)
+            throws IOException, SQLException {
+        String[] columns = reader.readRow();
+        if (columns == null) {
+            return 0;
+        }
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" +
+                String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+        long rows = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            String[] values;
+            while ((values = reader.readRow()) != null) {
+                if (values.length != columns.length) {
+                    throw new IOException("Таблица " + table + ", строка " + reader.getLineNumber() +
+                            ": ожидалось полей " + columns.length + ", получено " + values.length);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    bindValue(stmt, i + 1, values[i], reader.isQuoted(i));
+                }
+                stmt.addBatch();
+                if (++rows % RESTORE_BATCH_SIZE == 0) {
+                    stmt.executeBatch();
+                    if (listener != null && rows % PROGRESS_ROWS == 0) {
+                        listener.onProgress(table, rows);
+                    }
+                }
+            }
+            stmt.executeBatch();
+        }
+        if (listener != null) {
+            listener.onProgress(table, rows);
+        }
+        return rows;
+    }
+
+    private static void bindValue(PreparedStatement stmt, int index, String value, boolean quoted)
+            throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, Types.NULL);
+        } else if (quoted) {
+            stmt.setString(index, value);
+        } else if (value.startsWith("X'") && value.endsWith("'")) {
+            stmt.setBytes(index, BackupService.fromHex(value.substring(2, value.length() - 1)));
+        } else if (INTEGER.matcher(value).matches()) {
+            stmt.setLong(index, Long.parseLong(value));
+        } else {
+            try {
+                stmt.setDouble(index, Double.parseDouble(value));
+            } catch (NumberFormatException e) {
+                stmt.setString(index, value);
+            }
+        }
+    }
+
+    private static InputStream openTable(ZipFile zip, String table) throws IOException {
+        ZipEntry entry = zip.getEntry(table + TABLE_ENTRY_SUFFIX);
+        if (entry == null) {
+            throw new IOException("В архиве нет таблицы " + table);
+        }
+        return new GZIPInputStream(zip.getInputStream(entry), BUFFER_SIZE);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // Выгруженная таблица до упаковки в архив
+    private static class TableDump {
+        private final String table;
+        private final Path file;
+        private final long rows;
+        private final String sha256;
+        private final long crc;
+
+        TableDump(String table, Path file, long rows, String sha256, long crc) {
+            this.table = table;
+            this.file = file;
+            this.rows = rows;
+            this.sha256 = sha256;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * Итог создания или восстановления архива
+     */
+    public static class Result {
+        private final Path file;
+        private final Map<String, Long> rowsByTable;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        Result(Path file, Map<String, Long> rowsByTable, long bytes, long elapsedNanos) {
+            this.file = file;
+            this.rowsByTable = Collections.unmodifiableMap(rowsByTable);
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public Map<String, Long> getRowsByTable() {
+            return rowsByTable;
+        }
+
+        public long getTotalRows() {
+            return rowsByTable.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : getTotalRows() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "BackupArchiveService.Result{" +
+                    "file=" + file +
+                    ", rowsByTable=" + rowsByTable +
+                    ", bytes=" + bytes +
+                    ", elapsedMillis=" + getElapsedMillis() +
+                    ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package services;
+
+import config.AppConfig;
+import config.BackupSchema;
+import util.DatabaseUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Резервное копирование базы данных.
+ * Полная копия - снимок базы через VACUUM INTO, сжатый gzip: SQLite копирует страницы
+ * в одной транзакции чтения, поэтому копия согласована, а в режиме WAL писатель не ждет.
+ * Инкрементная копия - SQL-скрипт (gzip) со строками, измененными после предыдущей копии,
+ * по журналу backup_changes (см. BackupSchema). Скрипт применяется к восстановленной полной
+ * копии по порядку, например через sqlite3; после этого эскизы аналитики перестраиваются
+ * через SketchAnalyticsService.rebuildSketches.
+ */
+public class BackupService {
+    private static final Logger logger = Logger.getLogger(BackupService.class.getName());
+
+    /**
+     * Вид резервной копии
+     */
+    public enum Kind {
+        FULL("full"), INCREMENTAL("incremental");
+
+        private final String code;
+
+        Kind(String code) {
+            this.code = code;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter FILE_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private static final String VACUUM_INTO_SQL = "VACUUM INTO ?";
+    // Номер последнего изменения; не уменьшается после очистки журнала (AUTOINCREMENT)
+    private static final String CHANGE_SEQ_SQL =
+            "SELECT COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'backup_changes'), 0)";
+    private static final String LAST_BACKUP_SQL =
+            "SELECT change_seq FROM backup_log ORDER BY id DESC LIMIT 1";
+    private static final String LAST_FULL_BACKUP_SQL =
+            "SELECT file FROM backup_log WHERE kind = 'full' ORDER BY id DESC LIMIT 1";
+    private static final String RECENT_FULL_BACKUP_SQL =
+            "SELECT EXISTS (SELECT 1 FROM backup_log WHERE kind = 'full' AND created_at >= datetime('now', ?))";
+    private static final String CHANGED_ROWS_SQL =
+            "SELECT c.row_id AS backup_row_id, t.* FROM " +
+                    "(SELECT DISTINCT row_id FROM backup_changes WHERE table_name = ? AND seq > ? AND seq <= ?) c " +
+                    "LEFT JOIN %s t ON t.id = c.row_id ORDER BY c.row_id";
+    private static final String INSERT_LOG_SQL =
+            "INSERT INTO backup_log (kind, file, change_seq, row_count) VALUES (?, ?, ?, ?)";
+    private static final String PRUNE_CHANGES_SQL = "DELETE FROM backup_changes WHERE seq <= ?";
+
+    private final Path backupDir;
+
+    public BackupService() {
+        this(Paths.get(AppConfig.getBackupDirectory()));
+    }
+
+    public BackupService(Path backupDir) {
+        this.backupDir = backupDir;
+    }
+
+    /**
+     * Создает копию по расписанию: полную, если за последние backup.full_interval_days дней
+     * полной копии не было или ее файл удален, иначе инкрементную
+     */
+    public Result createBackup() throws IOException, SQLException {
+        return createBackup(null);
+    }
+
+    /**
+     * Создает копию по расписанию, сообщая количество строк каждой таблицы инкрементной копии
+     * @param listener слушатель прогресса или null
+     */
+    public Result createBackup(BackupArchiveService.ProgressListener listener) throws IOException, SQLException {
+        return needsFullBackup() ? createFullBackup() : createIncrementalBackup(listener);
+    }
+
+    /**
+     * Создает полную копию базы: backups/full_yyyyMMdd_HHmmss.db.gz
+     */
+    public Result createFullBackup() throws IOException, SQLException {
+        long start = System.nanoTime();
+        Files.createDirectories(backupDir);
+        String stamp = LocalDateTime.now().format(FILE_STAMP);
+        Path snapshot = backupDir.resolve("full_" + stamp + ".db.tmp");
+        Path target = backupDir.resolve("full_" + stamp + ".db.gz");
+        Files.deleteIfExists(snapshot);
+
+        long changeSeq;
+        try {
+            snapshot(snapshot);
+            // Водяной знак читается из самого снимка: он точно соответствует его содержимому
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + snapshot.toAbsolutePath());
+                 PreparedStatement stmt = conn.prepareStatement(CHANGE_SEQ_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                changeSeq = rs.next() ? rs.getLong(1) : 0;
+            }
+            try (InputStream in = Files.newInputStream(snapshot);
+                 OutputStream out = gzip(target)) {
+                in.transferTo(out);
+            }
+        } catch (IOException | SQLException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+
+        return complete(Kind.FULL, target, changeSeq, 0, start);
+    }
+
+    /**
+     * Создает инкрементную копию со строками, измененными после предыдущей копии:
+     * backups/incremental_yyyyMMdd_HHmmss.sql.gz. Без полной копии создает полную.
+     */
+    public Result createIncrementalBackup() throws IOException, SQLException {
+        return createIncrementalBackup(null);
+    }
+
+    /**
+     * Создает инкрементную копию; после каждой таблицы сообщает количество ее измененных строк
+     * @param listener слушатель прогресса или null
+     */
+    public Result createIncrementalBackup(BackupArchiveService.ProgressListener listener)
+            throws IOException, SQLException {
+        if (lastFullBackupFile() == null) {
+            return createFullBackup();
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(backupDir);
+        Path target = backupDir.resolve("incremental_" + LocalDateTime.now().format(FILE_STAMP) + ".sql.gz");
+
+        long changeSeq;
+        long rowCount = 0;
+        try (Connection conn = DatabaseUtil.getReadConnection()) {
+            // Все запросы читают один снимок базы
+            conn.setAutoCommit(false);
+            try (Writer writer = new OutputStreamWriter(gzip(target), StandardCharsets.UTF_8)) {
+                long fromSeq = queryLong(conn, LAST_BACKUP_SQL);
+                changeSeq = queryLong(conn, CHANGE_SEQ_SQL);
+                writer.write("-- Изменения " + (fromSeq + 1) + ".." + changeSeq + "\nBEGIN;\n" +
+                        "PRAGMA defer_foreign_keys = ON;\n");
+                for (String table : BackupSchema.TABLES) {
+                    long rows = writeChangedRows(conn, writer, table, fromSeq, changeSeq);
+                    rowCount += rows;
+                    if (listener != null) {
+                        listener.onProgress(table, rows);
+                    }
+                }
+                writer.write("COMMIT;\n");
+            } catch (IOException | SQLException e) {
+                Files.deleteIfExists(target);
+                throw e;
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+
+        return complete(Kind.INCREMENTAL, target, changeSeq, rowCount, start);
+    }
+
+    private boolean needsFullBackup() throws SQLException {
+        if (lastFullBackupFile() == null) {
+            return true;
+        }
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(RECENT_FULL_BACKUP_SQL)) {
+            stmt.setString(1, "-" + AppConfig.getBackupFullIntervalDays() + " days");
+            try (ResultSet rs = stmt.executeQuery()) {
+                return !(rs.next() && rs.getBoolean(1));
+            }
+        }
+    }
+
+    // Файл последней полной копии или null, если копии нет или файл удален
+    private Path lastFullBackupFile() throws SQLException {
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(LAST_FULL_BACKUP_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                return null;
+            }
+            Path file = Paths.get(rs.getString("file"));
+            return Files.exists(file) ? file : null;
+        }
+    }
+
+    // Для каждой измененной строки: вставка или обновление текущей версии либо удаление
+    private long writeChangedRows(Connection conn, Writer writer, String table, long fromSeq, long toSeq)
+            throws SQLException, IOException {
+        long count = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(String.format(CHANGED_ROWS_SQL, table))) {
+            stmt.setString(1, table);
+            stmt.setLong(2, fromSeq);
+            stmt.setLong(3, toSeq);
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                StringBuilder insertPrefix = new StringBuilder("INSERT INTO ").append(table).append(" (");
+                for (int i = 2; i <= meta.getColumnCount(); i++) {
+                    insertPrefix.append(i > 2 ? ", " : "").append(meta.getColumnName(i));
+                }
+                insertPrefix.append(") VALUES (");
+                // Обновление на месте, а не удаление и вставка: не затрагивает ссылающиеся строки
+                StringBuilder upsertSuffix = new StringBuilder(") ON CONFLICT (id) DO UPDATE SET ");
+                boolean first = true;
+                for (int i = 2; i <= meta.getColumnCount(); i++) {
+                    String column = meta.getColumnName(i);
+                    if (!"id".equals(column)) {
+                        upsertSuffix.append(first ? "" : ", ").append(column).append(" = excluded.").append(column);
+                        first = false;
+                    }
+                }
+                upsertSuffix.append(";\n");
+
+                StringBuilder sql = new StringBuilder(256);
+                while (rs.next()) {
+                    sql.setLength(0);
+                    if (rs.getObject("id") == null) {
+                        sql.append("DELETE FROM ").append(table).append(" WHERE id = ").append(rs.getLong(1))
+                                .append(";\n");
+                    } else {
+                        sql.append(insertPrefix);
+                        for (int i = 2; i <= meta.getColumnCount(); i++) {
+                            if (i > 2) {
+                                sql.append(", ");
+                            }
+                            appendLiteral(sql, rs.getObject(i));
+                        }
+                        sql.append(upsertSuffix);
+                    }
+                    writer.append(sql);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private Result complete(Kind kind, Path file, long changeSeq, long rowCount, long start) throws SQLException {
+        String fileName = file.toString();
+        // Изменения, вошедшие в копию, больше не нужны журналу
+        try {
+            DatabaseUtil.write(conn -> {
+                try (PreparedStatement log = conn.prepareStatement(INSERT_LOG_SQL);
+                     PreparedStatement prune = conn.prepareStatement(PRUNE_CHANGES_SQL)) {
+                    log.setString(1, kind.code);
+                    log.setString(2, fileName);
+                    log.setLong(3, changeSeq);
+                    log.setLong(4, rowCount);
+                    log.executeUpdate();
+                    prune.setLong(1, changeSeq);
+                    prune.executeUpdate();
+                }
+                return null;
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+
+        long bytes;
+        try {
+            bytes = Files.size(file);
+        } catch (IOException e) {
+            bytes = 0;
+        }
+        Result result = new Result(kind, file, rowCount, bytes, (System.nanoTime() - start) / 1_000_000);
+        logger.info("Резервная копия: " + result);
+        return result;
+    }
+
+    /**
+     * Согласованный снимок базы в файл через VACUUM INTO: одна транзакция чтения, писатель не ждет.
+     * Соединения читателей открыты с query_only, поэтому снимок делается через основной пул.
+     */
+    static void snapshot(Path file) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(VACUUM_INTO_SQL)) {
+            stmt.setString(1, file.toAbsolutePath().toString());
+            stmt.execute();
+        }
+    }
+
+    static StringBuilder appendHex(StringBuilder out, byte[] bytes) {
+        for (byte b : bytes) {
+            out.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return out;
+    }
+
+    static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex, 2 * i, 2 * i + 2, 16);
+        }
+        return bytes;
+    }
+
+    private static OutputStream gzip(Path file) throws IOException {
+        return new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Литерал SQLite для значения из драйвера: NULL, число, BLOB или строка
+    private static void appendLiteral(StringBuilder sql, Object value) {
+        if (value == null) {
+            sql.append("NULL");
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            sql.append(Double.isFinite(number) ? value.toString() : "NULL");
+        } else if (value instanceof byte[]) {
+            appendHex(sql.append("X'"), (byte[]) value).append('\'');
+        } else {
+            String text = value.toString();
+            sql.append('\'');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\'') {
+                    sql.append('\'');
+                }
+                sql.append(c);
+            }
+            sql.append('\'');
+        }
+    }
+
+    /**
+     * Итог создания резервной копии
+     */
+    public static class Result {
+        private final Kind kind;
+        private final Path file;
+        private final long rowCount;
+        private final long bytes;
+        private final long elapsedMillis;
+
+        Result(Kind kind, Path file, long rowCount, long bytes, long elapsedMillis) {
+            this.kind = kind;
+            this.file = file;
+            this.rowCount = rowCount;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Количество измененных строк в инкрементной копии; для полной копии 0
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "BackupService.Result{" +
+                    "kind=" + kind +
+                    ", file=" + file +
+                    ", rowCount=" + rowCount +
+                    ", bytes=" + bytes +
+                    ", elapsedMillis=" + elapsedMillis +
+                    '}';
+        }
+    }
+}
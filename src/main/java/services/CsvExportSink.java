@@ -0,0 +1,56 @@
+package services;
+
+import util.CsvWriter;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Выгрузка в CSV: строка заголовков и по строке на запись, текст в кавычках.
+ * Значения пишутся в формате обмена данными (ExportColumn.formatPlain).
+ */
+public class CsvExportSink<T> implements ExportSink<T> {
+    private final String filePath;
+
+    private List<ExportColumn<T>> columns;
+    private CsvWriter csv;
+
+    public CsvExportSink(String filePath) {
+        this.filePath = filePath;
+    }
+
+    @Override
+    public void begin(List<ExportColumn<T>> columns) throws IOException {
+        this.columns = columns;
+        csv = new CsvWriter(Paths.get(filePath));
+        for (ExportColumn<T> column : columns) {
+            csv.value(column.getTitle());
+        }
+        csv.endRow();
+    }
+
+    @Override
+    public void write(T row) throws IOException {
+        for (ExportColumn<T> column : columns) {
+            if (column.getType() == ExportColumn.Type.TEXT) {
+                csv.quoted((String) column.value(row));
+            } else {
+                csv.value(column.formatPlain(row));
+            }
+        }
+        csv.endRow();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        csv.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (csv != null) {
+            csv.close();
+        }
+    }
+}
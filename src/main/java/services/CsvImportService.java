@@ -0,0 +1,411 @@
+package services;
+
+import models.ServiceRecord;
+import models.SparePart;
+import models.WorkSchedule;
+import util.CsvReader;
+import util.DateUtil;
+import util.FileUtil;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Загрузка CSV-файлов в формате FileUtil: записей сервиса, запчастей и расписания.
+ * Файл отображается в память и делится на части примерно по CHUNK_BYTES на переводах строк
+ * вне кавычек. Части разбираются параллельно, готовые части по порядку передаются в DataService,
+ * который сохраняет их пачками через писателя. Одновременно разбирается не больше двух частей
+ * на поток, поэтому память не зависит от размера файла.
+ * Строки, которые не удалось разобрать, попадают в ошибки итога, остальные загружаются.
+ * Записи сервиса загружаются с id из столбца ID, поэтому столбец «Запись» расписания
+ * из того же набора файлов указывает на те же записи; строки расписания с неизвестной
+ * записью отклоняются.
+ */
+public class CsvImportService {
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int SCAN_WINDOW_BYTES = 64 * 1024 * 1024;
+
+    // Столбцы, без которых файл загружается: CSV записей без ID из ранних версий
+    private static final List<String> OPTIONAL_COLUMNS = List.of("ID");
+
+    private final DataService dataService;
+    private final int parallelism;
+    private final int chunkBytes;
+
+    public CsvImportService() {
+        this(new DataService(), Runtime.getRuntime().availableProcessors());
+    }
+
+    public CsvImportService(DataService dataService, int parallelism) {
+        this(dataService, parallelism, CHUNK_BYTES);
+    }
+
+    // Размер части задается в тестах, чтобы границы частей попадали внутрь небольшого файла
+    CsvImportService(DataService dataService, int parallelism, int chunkBytes) {
+        this.dataService = dataService;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkBytes = chunkBytes;
+    }
+
+    public ImportResult importServiceRecords(Path file) throws IOException {
+        return importServiceRecords(file, null);
+    }
+
+    public ImportResult importServiceRecords(Path file, ImportResult.Listener listener) throws IOException {
+        return importFile(file, FileUtil.RECORD_HEADER, CsvImportService::parseServiceRecord,
+                dataService::importServiceRecordRows, listener);
+    }
+
+    public ImportResult importSpareParts(Path file) throws IOException {
+        return importSpareParts(file, null);
+    }
+
+    /**
+     * Загружает запчасти; позиции с существующим кодом обновляются
+     */
+    public ImportResult importSpareParts(Path file, ImportResult.Listener listener) throws IOException {
+        return importFile(file, FileUtil.PART_HEADER, CsvImportService::parseSparePart,
+                dataService::importSparePartRows, listener);
+    }
+
+    public ImportResult importWorkSchedules(Path file) throws IOException {
+        return importWorkSchedules(file, null);
+    }
+
+    public ImportResult importWorkSchedules(Path file, ImportResult.Listener listener) throws IOException {
+        return importFile(file, FileUtil.SCHEDULE_HEADER, CsvImportService::parseWorkSchedule,
+                dataService::importWorkScheduleRows, listener);
+    }
+
+    /**
+     * Разбор строки в модель; columns[i] - номер поля i-го столбца заголовка FileUtil
+     */
+    @FunctionalInterface
+    interface RowParser<T> {
+        T parse(String[] fields, int[] columns);
+    }
+
+    /**
+     * Загрузка разобранных строк в DataService; ошибки добавляются в result
+     */
+    @FunctionalInterface
+    interface RowImporter<T> {
+        ImportResult importRows(Stream<ImportResult.Row<T>> rows, ImportResult result, ImportResult.Listener listener);
+    }
+
+    <T> ImportResult importFile(Path file, List<String> header, RowParser<T> parser,
+                                        RowImporter<T> importer, ImportResult.Listener listener) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Long> bounds = findChunkBounds(channel, chunkBytes);
+            int[] columns = mapColumns(readHeader(channel, bounds.get(0)), header);
+
+            // Ошибки разбора и сохранения попадают в один итог с номерами строк данных файла
+            ImportResult result = new ImportResult();
+            ChunkIterator<T> rows = new ChunkIterator<>(channel, bounds, executor, columns, parser, result);
+            Stream<ImportResult.Row<T>> stream = StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false);
+            return importer.importRows(stream, result, listener);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Границы частей файла: конец строки заголовка, затем переводы строк вне кавычек
+     * не чаще чем через chunkBytes, последний элемент - размер файла.
+     * В UTF-8 байты кавычки и перевода строки не встречаются внутри многобайтовых символов,
+     * поэтому поиск идет по байтам без декодирования.
+     */
+    private static List<Long> findChunkBounds(FileChannel channel, int chunkBytes) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        boolean inQuotes = false;
+        long chunkStart = -1;
+        for (long windowStart = 0; windowStart < size; windowStart += SCAN_WINDOW_BYTES) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    Math.min(SCAN_WINDOW_BYTES, size - windowStart));
+            int limit = window.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = window.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    long next = windowStart + i + 1;
+                    if (chunkStart < 0 || next - chunkStart >= chunkBytes) {
+                        bounds.add(next);
+                        chunkStart = next;
+                    }
+                }
+            }
+        }
+        if (bounds.isEmpty() || bounds.get(bounds.size() - 1) < size) {
+            bounds.add(size);
+        }
+        return bounds;
+    }
+
+    private static String[] readHeader(FileChannel channel, long headerEnd) throws IOException {
+        try (CsvReader reader = new CsvReader(decode(channel, 0, headerEnd))) {
+            String[] fields = reader.readRow();
+            if (fields == null) {
+                throw new IOException("Пустой файл");
+            }
+            // Метка порядка байтов, если файл сохранен в Excel
+            if (fields.length > 0 && fields[0] != null && fields[0].startsWith("\uFEFF")) {
+                fields[0] = fields[0].substring(1);
+            }
+            return fields;
+        }
+    }
+
+    // Номера полей столбцов заголовка FileUtil; порядок столбцов в файле может отличаться,
+    // отсутствующий необязательный столбец получает номер -1
+    private static int[] mapColumns(String[] fields, List<String> header) throws IOException {
+        int[] columns = new int[header.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < fields.length; j++) {
+                if (header.get(i).equals(fields[j] == null ? null : fields[j].trim())) {
+                    columns[i] = j;
+                    break;
+                }
+            }
+            if (columns[i] < 0 && !OPTIONAL_COLUMNS.contains(header.get(i))) {
+                throw new IOException("В файле нет столбца «" + header.get(i) + "»");
+            }
+        }
+        return columns;
+    }
+
+    private static CharArrayReader decode(FileChannel channel, long start, long end) throws IOException {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(
+                channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+        return new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+    }
+
+    private static <T> ParsedChunk<T> parseChunk(FileChannel channel, long start, long end, int[] columns,
+                                                 RowParser<T> parser) throws IOException {
+        int minFields = 0;
+        for (int column : columns) {
+            minFields = Math.max(minFields, column + 1);
+        }
+        ParsedChunk<T> chunk = new ParsedChunk<>();
+        try (CsvReader reader = new CsvReader(decode(channel, start, end))) {
+            String[] fields;
+            while ((fields = reader.readRow()) != null) {
+                // Пустые строки пропускаются
+                if (fields.length == 1 && fields[0] == null) {
+                    continue;
+                }
+                int index = chunk.rowCount++;
+                if (fields.length < minFields) {
+                    chunk.errors.addError(index, "Ожидалось полей: " + minFields + ", получено: " + fields.length);
+                    continue;
+                }
+                try {
+                    chunk.rows.add(new ImportResult.Row<>(index, parser.parse(fields, columns)));
+                } catch (RuntimeException e) {
+                    chunk.errors.addError(index, e.getMessage());
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private static ServiceRecord parseServiceRecord(String[] fields, int[] columns) {
+        ServiceRecord record = new ServiceRecord();
+        // Без столбца ID запись получает новый id
+        if (columns[0] >= 0) {
+            record.setId(parseInt(fields[columns[0]], "ID"));
+        }
+        record.setDate(parseDate(fields[columns[1]], "Дата"));
+        record.setClientName(fields[columns[2]]);
+        record.setClientPhone(fields[columns[3]]);
+        record.setServiceType(fields[columns[4]]);
+        record.setCarModel(fields[columns[5]]);
+        record.setLicensePlate(fields[columns[6]]);
+        record.setCost(parseDouble(fields[columns[7]], "Стоимость"));
+        record.setStatus(fields[columns[8]]);
+        record.setAssignedMechanicId(parseInt(fields[columns[9]], "Механик"));
+        record.setNotes(fields[columns[10]]);
+        return record;
+    }
+
+    private static SparePart parseSparePart(String[] fields, int[] columns) {
+        SparePart part = new SparePart();
+        part.setName(fields[columns[0]]);
+        part.setCode(fields[columns[1]]);
+        part.setCompatibleModels(fields[columns[2]]);
+        part.setQuantity(parseInt(fields[columns[3]], "Количество"));
+        part.setPrice(parseDouble(fields[columns[4]], "Цена"));
+        part.setSupplier(fields[columns[5]]);
+        part.setMinQuantity(parseInt(fields[columns[6]], "Минимальный запас"));
+        return part;
+    }
+
+    private static WorkSchedule parseWorkSchedule(String[] fields, int[] columns) {
+        WorkSchedule schedule = new WorkSchedule();
+        schedule.setMechanic(parseInt(fields[columns[0]], "Механик"));
+        schedule.setRecordId(parseInt(fields[columns[1]], "Запись"));
+        schedule.setStartTime(parseDateTime(fields[columns[2]], "Начало"));
+        schedule.setEndTime(parseDateTime(fields[columns[3]], "Конец"));
+        schedule.setStatus(fields[columns[4]]);
+        schedule.setNotes(fields[columns[5]]);
+        return schedule;
+    }
+
+    private static LocalDate parseDate(String value, String column) {
+        try {
+            return DateUtil.parseDate(value == null ? "" : value.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Столбец «" + column + "»: ожидалась дата, получено " + value);
+        }
+    }
+
+    private static LocalDateTime parseDateTime(String value, String column) {
+        try {
+            return DateUtil.parseDateTime(value == null ? "" : value.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Столбец «" + column + "»: ожидались дата и время, получено " + value);
+        }
+    }
+
+    private static int parseInt(String value, String column) {
+        try {
+            return Integer.parseInt(value == null ? "" : value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Столбец «" + column + "»: ожидалось целое число, получено " + value);
+        }
+    }
+
+    private static double parseDouble(String value, String column) {
+        try {
+            return Double.parseDouble(value == null ? "" : value.trim().replace(',', '.'));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Столбец «" + column + "»: ожидалось число, получено " + value);
+        }
+    }
+
+    // Разобранная часть файла
+    private static class ParsedChunk<T> {
+        // Номера строк внутри части
+        private final List<ImportResult.Row<T>> rows = new ArrayList<>();
+        private final ImportResult errors = new ImportResult();
+        private int rowCount;
+    }
+
+    /**
+     * Строки частей файла в исходном порядке с номерами строк данных от начала файла.
+     * Следующие части разбираются заранее, не больше двух на поток.
+     * Ошибки разбора добавляются в итог, когда до части доходит очередь, поэтому итог
+     * меняется только в потоке загрузки.
+     */
+    private class ChunkIterator<T> implements Iterator<ImportResult.Row<T>> {
+        private final FileChannel channel;
+        private final List<Long> bounds;
+        private final ExecutorService executor;
+        private final int[] columns;
+        private final RowParser<T> parser;
+        private final Deque<Future<ParsedChunk<T>>> inFlight = new ArrayDeque<>();
+        private final ImportResult result;
+        private int nextChunk;
+        private long rowsBefore;
+        private long currentOffset;
+        private Iterator<ImportResult.Row<T>> current = Collections.emptyIterator();
+
+        ChunkIterator(FileChannel channel, List<Long> bounds, ExecutorService executor, int[] columns,
+                      RowParser<T> parser, ImportResult result) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.executor = executor;
+            this.columns = columns;
+            this.parser = parser;
+            this.result = result;
+            while (inFlight.size() < 2 * parallelism && submitNext()) {
+                // Первые части ставятся в очередь разбора
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                Future<ParsedChunk<T>> next = inFlight.poll();
+                if (next == null) {
+                    return false;
+                }
+                ParsedChunk<T> chunk = await(next);
+                submitNext();
+                for (ImportResult.RowError error : chunk.errors.getErrors()) {
+                    result.addError(rowsBefore + error.getRowIndex(), error.getMessage());
+                }
+                currentOffset = rowsBefore;
+                rowsBefore += chunk.rowCount;
+                current = chunk.rows.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public ImportResult.Row<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ImportResult.Row<T> row = current.next();
+            return new ImportResult.Row<>(currentOffset + row.index, row.value);
+        }
+
+        private boolean submitNext() {
+            // bounds[0] - конец заголовка, часть i занимает [bounds[i], bounds[i + 1])
+            if (nextChunk + 1 >= bounds.size()) {
+                return false;
+            }
+            long start = bounds.get(nextChunk);
+            long end = bounds.get(nextChunk + 1);
+            nextChunk++;
+            inFlight.add(executor.submit(() -> parseChunk(channel, start, end, columns, parser)));
+            return true;
+        }
+
+        private ParsedChunk<T> await(Future<ParsedChunk<T>> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Загрузка прервана", e));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw new UncheckedIOException((IOException) e.getCause());
+                }
+                throw new UncheckedIOException(new IOException(e.getCause().getMessage(), e.getCause()));
+            }
+        }
+    }
+}
@@ -1,24 +1,53 @@
 package services;
 
+import config.AppConfig;
+import config.SketchSchema;
+import models.Page;
 import models.Payment;
 import models.ServiceRecord;
 import models.SparePart;
 import models.WorkSchedule;
 import util.DatabaseUtil;
+import util.PageToken;
+import util.ResultSetStream;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * Доступ к данным автосервиса.
+ * Чтение выполняется на соединениях пула читателей, все изменения ставятся
+ * в очередь единственного писателя и возвращают CompletableFuture.
+ */
 public class DataService {
+    // Каталог запчастей общий для всех экземпляров сервиса
+    private static final SparePartCache sparePartCache = new SparePartCache(DataService::loadAllSpareParts);
+    private static final ServiceRecordCache recordCache =
+            new ServiceRecordCache(AppConfig.getRecordCacheSize(), DataService::loadServiceRecord);
+    private static final ServiceAggregates aggregates = new ServiceAggregates();
+
     // SQL запросы для ServiceRecord
     private static final String INSERT_RECORD_SQL =
             "INSERT INTO service_records (date, client_name, client_phone, " +
                     "service_type, car_model, license_plate, cost, status, " +
                     "assigned_mechanic_id, notes) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+    // Загрузка с исходным id; NULL в id - новый id из AUTOINCREMENT
+    private static final String IMPORT_RECORD_SQL =
+            "INSERT INTO service_records (date, client_name, client_phone, " +
+                    "service_type, car_model, license_plate, cost, status, " +
+                    "assigned_mechanic_id, notes, id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private static final String UPDATE_RECORD_SQL =
             "UPDATE service_records SET date = ?, client_name = ?, client_phone = ?, " +
                     "service_type = ?, car_model = ?, license_plate = ?, cost = ?, " +
@@ -39,23 +68,68 @@ public class DataService {
     private static final String GET_RECORDS_BY_DATE_RANGE_SQL =
             "SELECT * FROM service_records WHERE date BETWEEN ? AND ? ORDER BY date DESC";
 
+    private static final String GET_RECORDS_BY_STATUS_AND_DATE_RANGE_SQL =
+            "SELECT * FROM service_records WHERE status = ? AND date BETWEEN ? AND ? " +
+                    "ORDER BY date DESC, id DESC";
+
+    private static final String GET_RECORDS_FOR_MECHANIC_SQL =
+            "SELECT * FROM service_records WHERE assigned_mechanic_id = ? AND date BETWEEN ? AND ? " +
+                    "ORDER BY date DESC";
+
+    // Keyset-пагинация по (date, id): индекс по date содержит rowid, OFFSET не используется
+    private static final String GET_RECORDS_PAGE_SQL =
+            "SELECT * FROM service_records WHERE date BETWEEN ? AND ? " +
+                    "ORDER BY date DESC, id DESC LIMIT ?";
+
+    private static final String GET_RECORDS_PAGE_AFTER_SQL =
+            "SELECT * FROM service_records WHERE date BETWEEN ? AND ? AND (date, id) < (?, ?) " +
+                    "ORDER BY date DESC, id DESC LIMIT ?";
+
+    // То же с фильтром по статусу, по индексу (status, date)
+    private static final String GET_RECORDS_BY_STATUS_PAGE_SQL =
+            "SELECT * FROM service_records WHERE status = ? AND date BETWEEN ? AND ? " +
+                    "ORDER BY date DESC, id DESC LIMIT ?";
+
+    private static final String GET_RECORDS_BY_STATUS_PAGE_AFTER_SQL =
+            "SELECT * FROM service_records WHERE status = ? AND date BETWEEN ? AND ? AND (date, id) < (?, ?) " +
+                    "ORDER BY date DESC, id DESC LIMIT ?";
+
+    private static final String GET_RECORD_GROUPS_SQL =
+            "SELECT " + DatabaseUtil.dayExpression("date") + " AS day, status, service_type, car_model, " +
+                    "COUNT(*) AS cnt, SUM(CAST(ROUND(cost * 100) AS INTEGER)) AS kopecks " +
+                    "FROM service_records GROUP BY day, status, service_type, car_model";
+
     // SQL запросы для SparePart
     private static final String INSERT_SPARE_PART_SQL =
-            "INSERT INTO spare_parts (name, description, quantity, price, " +
-                    "compatible_models, supplier) VALUES (?, ?, ?, ?, ?, ?)";
+            "INSERT INTO spare_parts (name, code, description, quantity, price, " +
+                    "compatible_models, supplier, min_quantity) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
     private static final String UPDATE_SPARE_PART_SQL =
-            "UPDATE spare_parts SET name = ?, description = ?, quantity = ?, " +
-                    "price = ?, compatible_models = ?, supplier = ? WHERE id = ?";
+            "UPDATE spare_parts SET name = ?, code = ?, description = ?, quantity = ?, " +
+                    "price = ?, compatible_models = ?, supplier = ?, min_quantity = ? WHERE id = ?";
 
     private static final String GET_ALL_SPARE_PARTS_SQL =
             "SELECT * FROM spare_parts ORDER BY name";
 
+    private static final String UPSERT_SPARE_PART_SQL =
+            "INSERT INTO spare_parts (name, code, description, compatible_models, quantity, " +
+                    "price, supplier, min_quantity) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT(code) DO UPDATE SET name = excluded.name, " +
+                    "description = excluded.description, compatible_models = excluded.compatible_models, " +
+                    "quantity = excluded.quantity, price = excluded.price, " +
+                    "supplier = excluded.supplier, min_quantity = excluded.min_quantity";
+
     // SQL запросы для WorkSchedule
     private static final String INSERT_WORK_SCHEDULE_SQL =
             "INSERT INTO work_schedules (mechanic_id, record_id, start_time, " +
                     "end_time, status) VALUES (?, ?, ?, ?, ?)";
 
+    private static final String IMPORT_WORK_SCHEDULE_SQL =
+            "INSERT INTO work_schedules (mechanic_id, record_id, start_time, " +
+                    "end_time, status, notes) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String RECORD_EXISTS_SQL = "SELECT 1 FROM service_records WHERE id = ?";
+
     private static final String GET_WORK_SCHEDULES_FOR_MECHANIC_SQL =
             "SELECT * FROM work_schedules WHERE mechanic_id = ? AND DATE(start_time) = ?";
 
@@ -68,77 +142,161 @@ public class DataService {
                     "transaction_id, notes) VALUES (?, ?, ?, ?, ?, ?)";
 
     // Методы для работы с записями сервиса
-    public boolean addServiceRecord(ServiceRecord record) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(INSERT_RECORD_SQL,
-                     Statement.RETURN_GENERATED_KEYS)) {
-
-            setRecordParameters(stmt, record);
-            stmt.setString(8, record.getStatus());
-            stmt.setInt(9, record.getAssignedMechanicId());
-            stmt.setString(10, record.getNotes());
-
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                return false;
+    public CompletableFuture<Boolean> addServiceRecord(ServiceRecord record) {
+        return DatabaseUtil.write(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_RECORD_SQL,
+                    Statement.RETURN_GENERATED_KEYS)) {
+
+                setRecordParameters(stmt, record);
+                stmt.setString(8, record.getStatus());
+                stmt.setInt(9, record.getAssignedMechanicId());
+                stmt.setString(10, record.getNotes());
+
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows == 0) {
+                    return false;
+                }
+
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        record.setId(generatedKeys.getInt(1));
+                    }
+                }
+
+                aggregates.add(record);
+                SketchSchema.markRecordAdded(record.getId());
+                return true;
             }
+        }).whenComplete(DataService::invalidateAggregatesOnError);
+    }
 
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    record.setId(generatedKeys.getInt(1));
+    public CompletableFuture<Boolean> updateServiceRecord(ServiceRecord record) {
+        return DatabaseUtil.write(conn -> {
+            ServiceRecord previous = readServiceRecord(conn, record.getId());
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_RECORD_SQL)) {
+                setRecordParameters(stmt, record);
+                stmt.setString(8, record.getStatus());
+                stmt.setInt(9, record.getAssignedMechanicId());
+                stmt.setString(10, record.getNotes());
+                stmt.setInt(11, record.getId());
+
+                if (stmt.executeUpdate() == 0) {
+                    return false;
                 }
+                List<LocalDate> days = new ArrayList<>(List.of(record.getDate()));
+                if (previous != null) {
+                    aggregates.remove(previous);
+                    days.add(previous.getDate());
+                }
+                aggregates.add(record);
+                SketchSchema.markDaysChanged(days);
+                return true;
             }
+        }).whenComplete((updated, error) -> {
+            recordCache.invalidate(record.getId());
+            invalidateAggregatesOnError(updated, error);
+        });
+    }
 
-            return true;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+    public CompletableFuture<Boolean> deleteServiceRecord(int id) {
+        return DatabaseUtil.write(conn -> {
+            ServiceRecord previous = readServiceRecord(conn, id);
+            try (PreparedStatement stmt = conn.prepareStatement(DELETE_RECORD_SQL)) {
+                stmt.setInt(1, id);
+                if (stmt.executeUpdate() == 0) {
+                    return false;
+                }
+                if (previous != null) {
+                    aggregates.remove(previous);
+                    SketchSchema.markDaysChanged(List.of(previous.getDate()));
+                }
+                return true;
+            }
+        }).whenComplete((deleted, error) -> {
+            recordCache.invalidate(id);
+            invalidateAggregatesOnError(deleted, error);
+        });
+    }
+
+    /**
+     * Сводка по записям за период из накопленных агрегатов.
+     * При первом обращении агрегаты строятся одним запросом GROUP BY,
+     * дальше они обновляются при каждом изменении записи.
+     * @param status статус записей; null - все статусы
+     */
+    public ServiceAggregates.Summary getServiceSummary(LocalDate startDate, LocalDate endDate, String status) {
+        if (!aggregates.isLoaded()) {
+            // Построение выполняется писателем, поэтому ни одно изменение не теряется
+            // и не учитывается дважды
+            DatabaseUtil.write(conn -> {
+                if (!aggregates.isLoaded()) {
+                    loadAggregates(conn);
+                }
+                return null;
+            }).whenComplete(DataService::invalidateAggregatesOnError).join();
         }
+        return aggregates.summarize(startDate, endDate, status);
     }
 
-    public boolean updateServiceRecord(ServiceRecord record) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(UPDATE_RECORD_SQL)) {
+    // Группы считаются в базе, записи сервиса в Java не создаются
+    private static void loadAggregates(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(GET_RECORD_GROUPS_SQL)) {
+            aggregates.load(action -> {
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        action.accept(LocalDate.parse(rs.getString("day")), rs.getString("status"),
+                                rs.getString("service_type"), rs.getString("car_model"),
+                                rs.getLong("cnt"), rs.getLong("kopecks"));
+                    }
+                }
+            });
+        }
+    }
 
-            setRecordParameters(stmt, record);
-            stmt.setString(8, record.getStatus());
-            stmt.setInt(9, record.getAssignedMechanicId());
-            stmt.setString(10, record.getNotes());
-            stmt.setInt(11, record.getId());
+    /**
+     * Сбрасывает кэши и агрегаты после изменения данных в обход DataService (например, восстановления)
+     */
+    static void invalidateCaches() {
+        sparePartCache.invalidate();
+        recordCache.invalidateAll();
+        aggregates.invalidate();
+    }
 
-            return stmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+    // Изменение агрегатов уже применено, а транзакция писателя могла не зафиксироваться
+    private static void invalidateAggregatesOnError(Object result, Throwable error) {
+        if (error != null) {
+            aggregates.invalidate();
         }
     }
 
-    public boolean deleteServiceRecord(int id) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(DELETE_RECORD_SQL)) {
+    /**
+     * Возвращает запись по id; повторные обращения обслуживаются из кэша
+     * @return копия записи или null, если записи нет
+     */
+    public ServiceRecord getServiceRecordById(int id) {
+        return recordCache.get(id);
+    }
 
-            stmt.setInt(1, id);
-            return stmt.executeUpdate() > 0;
+    public static ServiceRecordCache.Metrics getRecordCacheMetrics() {
+        return recordCache.getMetrics();
+    }
+
+    private static ServiceRecord loadServiceRecord(int id) {
+        try (Connection conn = DatabaseUtil.getReadConnection()) {
+            return readServiceRecord(conn, id);
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
         }
+        return null;
     }
 
-    public ServiceRecord getServiceRecordById(int id) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(GET_RECORD_BY_ID_SQL)) {
-
+    private static ServiceRecord readServiceRecord(Connection conn, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(GET_RECORD_BY_ID_SQL)) {
             stmt.setInt(1, id);
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapServiceRecord(rs);
-                }
+                return rs.next() ? mapServiceRecord(rs) : null;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return null;
     }
 
     public List<ServiceRecord> getAllServiceRecords() {
@@ -146,7 +304,7 @@ public class DataService {
     }
 
     public List<ServiceRecord> getServiceRecordsByStatus(String status) {
-        try (Connection conn = DatabaseUtil.getConnection();
+        try (Connection conn = DatabaseUtil.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(GET_RECORDS_BY_STATUS_SQL)) {
 
             stmt.setString(1, status);
@@ -157,8 +315,59 @@ public class DataService {
         }
     }
 
+    /**
+     * Возвращает все записи сервиса ленивым потоком; поток нужно закрыть
+     */
+    public Stream<ServiceRecord> streamAllServiceRecords() throws SQLException {
+        return streamAllServiceRecords(STREAM_FETCH_SIZE);
+    }
+
+    public Stream<ServiceRecord> streamAllServiceRecords(int fetchSize) throws SQLException {
+        Connection conn = DatabaseUtil.getReadConnection();
+        return ResultSetStream.of(conn, prepare(conn, GET_ALL_RECORDS_SQL), fetchSize, DataService::mapServiceRecord);
+    }
+
+    /**
+     * Возвращает записи сервиса за период ленивым потоком; поток нужно закрыть
+     */
+    public Stream<ServiceRecord> streamServiceRecordsByDateRange(LocalDate start, LocalDate end) throws SQLException {
+        return streamServiceRecordsByDateRange(start, end, STREAM_FETCH_SIZE);
+    }
+
+    public Stream<ServiceRecord> streamServiceRecordsByDateRange(LocalDate start, LocalDate end,
+                                                                 int fetchSize) throws SQLException {
+        Connection conn = DatabaseUtil.getReadConnection();
+        PreparedStatement stmt = prepare(conn, GET_RECORDS_BY_DATE_RANGE_SQL);
+        try {
+            stmt.setDate(1, Date.valueOf(start));
+            stmt.setDate(2, Date.valueOf(end));
+        } catch (SQLException e) {
+            DatabaseUtil.closeQuietly(stmt, conn);
+            throw e;
+        }
+        return ResultSetStream.of(conn, stmt, fetchSize, DataService::mapServiceRecord);
+    }
+
+    /**
+     * Возвращает записи с указанным статусом за период ленивым потоком; поток нужно закрыть
+     */
+    public Stream<ServiceRecord> streamServiceRecordsByStatusAndDateRange(String status, LocalDate start,
+                                                                          LocalDate end) throws SQLException {
+        Connection conn = DatabaseUtil.getReadConnection();
+        PreparedStatement stmt = prepare(conn, GET_RECORDS_BY_STATUS_AND_DATE_RANGE_SQL);
+        try {
+            stmt.setString(1, status);
+            stmt.setDate(2, Date.valueOf(start));
+            stmt.setDate(3, Date.valueOf(end));
+        } catch (SQLException e) {
+            DatabaseUtil.closeQuietly(stmt, conn);
+            throw e;
+        }
+        return ResultSetStream.of(conn, stmt, STREAM_FETCH_SIZE, DataService::mapServiceRecord);
+    }
+
     public List<ServiceRecord> getServiceRecordsByDateRange(LocalDate start, LocalDate end) {
-        try (Connection conn = DatabaseUtil.getConnection();
+        try (Connection conn = DatabaseUtil.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(GET_RECORDS_BY_DATE_RANGE_SQL)) {
 
             stmt.setDate(1, Date.valueOf(start));
@@ -170,112 +379,231 @@ public class DataService {
         }
     }
 
-    // Методы для работы с запчастями
-    public boolean addSparePart(SparePart part) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(INSERT_SPARE_PART_SQL,
-                     Statement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setString(1, part.getName());
-            stmt.setString(2, part.getDescription());
-            stmt.setInt(3, part.getQuantity());
-            stmt.setDouble(4, part.getPrice());
-            stmt.setString(5, part.getCompatibleModels());
-            stmt.setString(6, part.getSupplier());
-
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                return false;
-            }
+    /**
+     * Возвращает записи с указанным статусом за период; фильтрация выполняется в SQL
+     * по составному индексу (status, date)
+     */
+    public List<ServiceRecord> getServiceRecordsByStatusAndDateRange(String status, LocalDate start, LocalDate end) {
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(GET_RECORDS_BY_STATUS_AND_DATE_RANGE_SQL)) {
 
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    part.setId(generatedKeys.getInt(1));
-                }
-            }
+            stmt.setString(1, status);
+            stmt.setDate(2, Date.valueOf(start));
+            stmt.setDate(3, Date.valueOf(end));
+            return getServiceRecords(stmt);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
 
-            return true;
+    /**
+     * Возвращает записи, назначенные механику за период, по индексу (assigned_mechanic_id, date)
+     */
+    public List<ServiceRecord> getServiceRecordsForMechanic(int mechanicId, LocalDate start, LocalDate end) {
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(GET_RECORDS_FOR_MECHANIC_SQL)) {
+
+            stmt.setInt(1, mechanicId);
+            stmt.setDate(2, Date.valueOf(start));
+            stmt.setDate(3, Date.valueOf(end));
+            return getServiceRecords(stmt);
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
+            return new ArrayList<>();
         }
     }
 
-    public boolean updateSparePart(SparePart part) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(UPDATE_SPARE_PART_SQL)) {
+    /**
+     * Возвращает страницу записей за период, от новых к старым
+     * @param pageToken токен из предыдущей страницы или null для первой страницы
+     * @param pageSize размер страницы
+     * @return страница записей и токен следующей страницы
+     */
+    public Page<ServiceRecord> getServiceRecordsPage(LocalDate start, LocalDate end,
+                                                     String pageToken, int pageSize) {
+        return getServiceRecordsPage(start, end, null, pageToken, pageSize);
+    }
 
-            stmt.setString(1, part.getName());
-            stmt.setString(2, part.getDescription());
-            stmt.setInt(3, part.getQuantity());
-            stmt.setDouble(4, part.getPrice());
-            stmt.setString(5, part.getCompatibleModels());
-            stmt.setString(6, part.getSupplier());
-            stmt.setInt(7, part.getId());
+    /**
+     * Возвращает страницу записей за период с необязательным фильтром по статусу
+     * @param status статус или null для всех записей
+     */
+    public Page<ServiceRecord> getServiceRecordsPage(LocalDate start, LocalDate end, String status,
+                                                     String pageToken, int pageSize) {
+        String sql = status == null
+                ? (pageToken == null ? GET_RECORDS_PAGE_SQL : GET_RECORDS_PAGE_AFTER_SQL)
+                : (pageToken == null ? GET_RECORDS_BY_STATUS_PAGE_SQL : GET_RECORDS_BY_STATUS_PAGE_AFTER_SQL);
+
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            if (status != null) {
+                stmt.setString(index++, status);
+            }
+            stmt.setDate(index++, Date.valueOf(start));
+            stmt.setDate(index++, Date.valueOf(end));
+            if (pageToken != null) {
+                String[] key = PageToken.decode(pageToken, 2);
+                stmt.setDate(index++, Date.valueOf(LocalDate.parse(key[0])));
+                stmt.setInt(index++, Integer.parseInt(key[1]));
+            }
+            // Одна лишняя строка показывает, есть ли следующая страница
+            stmt.setInt(index, pageSize + 1);
 
-            return stmt.executeUpdate() > 0;
+            return toRecordsPage(getServiceRecords(stmt), pageSize);
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
+            return new Page<>(new ArrayList<>(), null);
         }
     }
 
+    // Методы для работы с запчастями
+    public CompletableFuture<Boolean> addSparePart(SparePart part) {
+        return DatabaseUtil.write(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SPARE_PART_SQL,
+                    Statement.RETURN_GENERATED_KEYS)) {
+
+                bindSparePart(stmt, part);
+
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows == 0) {
+                    return false;
+                }
+
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        part.setId(generatedKeys.getInt(1));
+                    }
+                }
+
+                return true;
+            }
+        }).thenApply(added -> cacheSparePart(added, part));
+    }
+
+    public CompletableFuture<Boolean> updateSparePart(SparePart part) {
+        return DatabaseUtil.write(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SPARE_PART_SQL)) {
+                bindSparePart(stmt, part);
+                stmt.setInt(9, part.getId());
+
+                return stmt.executeUpdate() > 0;
+            }
+        }).thenApply(updated -> cacheSparePart(updated, part));
+    }
+
+    /**
+     * Возвращает каталог запчастей из кэша; база читается только при первом обращении
+     * и после массовой загрузки
+     */
     public List<SparePart> getAllSpareParts() {
+        try {
+            return sparePartCache.getAll();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    public Optional<SparePart> getSparePartById(int id) {
+        try {
+            return sparePartCache.getById(id);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    public Optional<SparePart> getSparePartByCode(String code) {
+        try {
+            return sparePartCache.getByCode(code);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    public static SparePartCache.Metrics getSparePartCacheMetrics() {
+        return sparePartCache.getMetrics();
+    }
+
+    // Кэш обновляется в потоке писателя после commit, поэтому читатели не видят несохраненных данных
+    private static boolean cacheSparePart(boolean written, SparePart part) {
+        if (written) {
+            sparePartCache.put(part);
+        }
+        return written;
+    }
+
+    private static void bindSparePart(PreparedStatement stmt, SparePart part) throws SQLException {
+        stmt.setString(1, part.getName());
+        stmt.setString(2, part.getCode());
+        stmt.setString(3, part.getDescription());
+        stmt.setInt(4, part.getQuantity());
+        stmt.setDouble(5, part.getPrice());
+        stmt.setString(6, part.getCompatibleModels());
+        stmt.setString(7, part.getSupplier());
+        stmt.setInt(8, part.getMinQuantity());
+    }
+
+    private static List<SparePart> loadAllSpareParts() {
         List<SparePart> parts = new ArrayList<>();
-        try (Connection conn = DatabaseUtil.getConnection();
+        try (Connection conn = DatabaseUtil.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(GET_ALL_SPARE_PARTS_SQL)) {
 
             while (rs.next()) {
-                SparePart part = new SparePart();
-                part.setId(rs.getInt("id"));
-                part.setName(rs.getString("name"));
-                part.setDescription(rs.getString("description"));
-                part.setQuantity(rs.getInt("quantity"));
-                part.setPrice(rs.getDouble("price"));
-                part.setCompatibleModels(rs.getString("compatible_models"));
-                part.setSupplier(rs.getString("supplier"));
-                parts.add(part);
+                parts.add(mapSparePart(rs));
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            // Пустой каталог после сбоя чтения не должен попасть в кэш
+            throw new RuntimeException("Ошибка загрузки каталога запчастей", e);
         }
         return parts;
     }
 
-    // Методы для работы с расписанием работ
-    public boolean scheduleWork(WorkSchedule schedule) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(INSERT_WORK_SCHEDULE_SQL,
-                     Statement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setInt(1, schedule.getMechanicId());
-            stmt.setInt(2, schedule.getRecordId());
-            stmt.setTimestamp(3, Timestamp.valueOf(schedule.getStartTime()));
-            stmt.setTimestamp(4, Timestamp.valueOf(schedule.getEndTime()));
-            stmt.setString(5, schedule.getStatus());
+    /**
+     * Возвращает все запчасти ленивым потоком; поток нужно закрыть
+     */
+    public Stream<SparePart> streamAllSpareParts() throws SQLException {
+        Connection conn = DatabaseUtil.getReadConnection();
+        return ResultSetStream.of(conn, prepare(conn, GET_ALL_SPARE_PARTS_SQL), STREAM_FETCH_SIZE,
+                DataService::mapSparePart);
+    }
 
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                return false;
-            }
+    // Методы для работы с расписанием работ
+    public CompletableFuture<Boolean> scheduleWork(WorkSchedule schedule) {
+        return DatabaseUtil.write(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_WORK_SCHEDULE_SQL,
+                    Statement.RETURN_GENERATED_KEYS)) {
+
+                stmt.setInt(1, schedule.getMechanicId());
+                stmt.setInt(2, schedule.getRecordId());
+                stmt.setTimestamp(3, Timestamp.valueOf(schedule.getStartTime()));
+                stmt.setTimestamp(4, Timestamp.valueOf(schedule.getEndTime()));
+                stmt.setString(5, schedule.getStatus());
+
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows == 0) {
+                    return false;
+                }
 
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    schedule.setId(generatedKeys.getInt(1));
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        schedule.setId(generatedKeys.getInt(1));
+                    }
                 }
-            }
 
-            return true;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+                return true;
+            }
+        });
     }
 
     public List<WorkSchedule> getWorkScheduleForMechanic(int mechanicId, LocalDate date) {
         List<WorkSchedule> schedules = new ArrayList<>();
-        try (Connection conn = DatabaseUtil.getConnection();
+        try (Connection conn = DatabaseUtil.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(GET_WORK_SCHEDULES_FOR_MECHANIC_SQL)) {
 
             stmt.setInt(1, mechanicId);
@@ -283,14 +611,7 @@ public class DataService {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    WorkSchedule schedule = new WorkSchedule();
-                    schedule.setId(rs.getInt("id"));
-                    schedule.setMechanic(rs.getInt("mechanic_id"));
-                    schedule.setRecordId(rs.getInt("record_id"));
-                    schedule.setStartTime(rs.getTimestamp("start_time").toLocalDateTime());
-                    schedule.setEndTime(rs.getTimestamp("end_time").toLocalDateTime());
-                    schedule.setStatus(rs.getString("status"));
-                    schedules.add(schedule);
+                    schedules.add(mapWorkSchedule(rs));
                 }
             }
         } catch (SQLException e) {
@@ -301,19 +622,12 @@ public class DataService {
 
     public List<WorkSchedule> getAllWorkSchedules() {
         List<WorkSchedule> schedules = new ArrayList<>();
-        try (Connection conn = DatabaseUtil.getConnection();
+        try (Connection conn = DatabaseUtil.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(GET_ALL_WORK_SCHEDULES_SQL)) {
 
             while (rs.next()) {
-                WorkSchedule schedule = new WorkSchedule();
-                    schedule.setId(rs.getInt("id"));
-                    schedule.setMechanic(rs.getInt("mechanic_id"));
-                    schedule.setRecordId(rs.getInt("record_id"));
-                schedule.setStartTime(rs.getTimestamp("start_time").toLocalDateTime());
-                schedule.setEndTime(rs.getTimestamp("end_time").toLocalDateTime());
-                schedule.setStatus(rs.getString("status"));
-                schedules.add(schedule);
+                schedules.add(mapWorkSchedule(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -321,27 +635,273 @@ public class DataService {
         return schedules;
     }
 
+    /**
+     * Возвращает все расписание работ ленивым потоком; поток нужно закрыть
+     */
+    public Stream<WorkSchedule> streamAllWorkSchedules() throws SQLException {
+        return streamAllWorkSchedules(STREAM_FETCH_SIZE);
+    }
+
+    public Stream<WorkSchedule> streamAllWorkSchedules(int fetchSize) throws SQLException {
+        Connection conn = DatabaseUtil.getReadConnection();
+        return ResultSetStream.of(conn, prepare(conn, GET_ALL_WORK_SCHEDULES_SQL), fetchSize,
+                this::mapWorkSchedule);
+    }
+
     // Методы для работы с платежами
-    public void savePayment(Payment payment) {
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(INSERT_PAYMENT_SQL)) {
-
-            stmt.setInt(1, payment.getRecordId());
-            stmt.setDouble(2, payment.getAmount());
-            stmt.setTimestamp(3, Timestamp.valueOf(payment.getPaymentDate()));
-            stmt.setString(4, payment.getPaymentMethod());
-            stmt.setString(5, payment.getTransactionId());
-            stmt.setString(6, payment.getNotes());
-
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    public CompletableFuture<Boolean> savePayment(Payment payment) {
+        return DatabaseUtil.write(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_PAYMENT_SQL)) {
+                stmt.setInt(1, payment.getRecordId());
+                stmt.setDouble(2, payment.getAmount());
+                stmt.setTimestamp(3, Timestamp.valueOf(payment.getPaymentDate()));
+                stmt.setString(4, payment.getPaymentMethod());
+                stmt.setString(5, payment.getTransactionId());
+                stmt.setString(6, payment.getNotes());
+
+                return stmt.executeUpdate() > 0;
+            }
+        });
+    }
+
+    // Потоковое чтение: сколько строк драйвер читает за один раз
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    // Массовая загрузка данных
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
+    /**
+     * Загружает каталог запчастей пачками; существующие позиции с тем же кодом обновляются
+     * @param parts поток запчастей; читается последовательно, в памяти держится не более двух пачек
+     * @return итог загрузки с ошибками по строкам
+     */
+    public ImportResult importSpareParts(Stream<SparePart> parts) {
+        return importSpareParts(parts, null);
+    }
+
+    public ImportResult importSpareParts(Stream<SparePart> parts, ImportResult.Listener listener) {
+        return importSparePartRows(numbered(parts), new ImportResult(), listener);
+    }
+
+    /**
+     * Загрузка запчастей с номерами строк источника; ошибки добавляются в result
+     */
+    ImportResult importSparePartRows(Stream<ImportResult.Row<SparePart>> parts, ImportResult result,
+                                     ImportResult.Listener listener) {
+        try {
+            return importInChunks(parts, result, UPSERT_SPARE_PART_SQL, (stmt, part) -> {
+                stmt.setString(1, part.getName());
+                stmt.setString(2, part.getCode());
+                stmt.setString(3, part.getDescription());
+                stmt.setString(4, part.getCompatibleModels());
+                stmt.setInt(5, part.getQuantity());
+                stmt.setDouble(6, part.getPrice());
+                stmt.setString(7, part.getSupplier());
+                stmt.setInt(8, part.getMinQuantity());
+            }, listener);
+        } finally {
+            // Загрузка могла изменить любую часть каталога
+            sparePartCache.invalidate();
+        }
+    }
+
+    /**
+     * Загружает записи сервиса пачками
+     * @param records поток записей; читается последовательно, в памяти держится не более двух пачек
+     * @return итог загрузки с ошибками по строкам
+     */
+    public ImportResult importServiceRecords(Stream<ServiceRecord> records) {
+        return importServiceRecords(records, null);
+    }
+
+    public ImportResult importServiceRecords(Stream<ServiceRecord> records, ImportResult.Listener listener) {
+        return importServiceRecordRows(numbered(records), new ImportResult(), listener);
+    }
+
+    /**
+     * Загрузка записей сервиса с номерами строк источника; ошибки добавляются в result
+     */
+    ImportResult importServiceRecordRows(Stream<ImportResult.Row<ServiceRecord>> records, ImportResult result,
+                                         ImportResult.Listener listener) {
+        // Дни загруженных записей; заполняется в потоке писателя
+        Set<LocalDate> days = ConcurrentHashMap.newKeySet();
+        try {
+            return importInChunks(records, result, IMPORT_RECORD_SQL, (stmt, record) -> {
+                setRecordParameters(stmt, record);
+                stmt.setString(8, record.getStatus());
+                stmt.setInt(9, record.getAssignedMechanicId());
+                stmt.setString(10, record.getNotes());
+                // Запись с уже занятым id отклоняется ограничением первичного ключа
+                if (record.getId() > 0) {
+                    stmt.setInt(11, record.getId());
+                } else {
+                    stmt.setNull(11, Types.INTEGER);
+                }
+                days.add(record.getDate());
+            }, listener);
+        } finally {
+            // Агрегаты будут построены заново при следующем обращении
+            aggregates.invalidate();
+            if (!days.isEmpty()) {
+                DatabaseUtil.write(conn -> {
+                    SketchSchema.refreshDays(conn, days);
+                    return null;
+                }).join();
+            }
         }
     }
 
+    /**
+     * Загружает расписание работ пачками
+     * @param schedules поток записей расписания; читается последовательно, в памяти держится не более двух пачек
+     * @return итог загрузки с ошибками по строкам
+     */
+    public ImportResult importWorkSchedules(Stream<WorkSchedule> schedules) {
+        return importWorkSchedules(schedules, null);
+    }
+
+    public ImportResult importWorkSchedules(Stream<WorkSchedule> schedules, ImportResult.Listener listener) {
+        return importWorkScheduleRows(numbered(schedules), new ImportResult(), listener);
+    }
+
+    /**
+     * Загрузка расписания с номерами строк источника; ошибки добавляются в result.
+     * Строка, ссылающаяся на несуществующую запись сервиса, не загружается.
+     */
+    ImportResult importWorkScheduleRows(Stream<ImportResult.Row<WorkSchedule>> schedules, ImportResult result,
+                                        ImportResult.Listener listener) {
+        return importInChunks(schedules, result, IMPORT_WORK_SCHEDULE_SQL, (stmt, schedule) -> {
+            if (!recordExists(stmt.getConnection(), schedule.getRecordId())) {
+                throw new SQLException("Запись сервиса " + schedule.getRecordId() + " не найдена");
+            }
+            stmt.setInt(1, schedule.getMechanicId());
+            stmt.setInt(2, schedule.getRecordId());
+            stmt.setTimestamp(3, Timestamp.valueOf(schedule.getStartTime()));
+            stmt.setTimestamp(4, Timestamp.valueOf(schedule.getEndTime()));
+            stmt.setString(5, schedule.getStatus());
+            stmt.setString(6, schedule.getNotes());
+        }, listener);
+    }
+
+    private static boolean recordExists(Connection conn, int recordId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(RECORD_EXISTS_SQL)) {
+            stmt.setInt(1, recordId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Номера строк по порядку потока, начиная с 0
+    private static <T> Stream<ImportResult.Row<T>> numbered(Stream<T> rows) {
+        long[] next = {0};
+        return rows.sequential().map(row -> new ImportResult.Row<>(next[0]++, row));
+    }
+
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        void bind(PreparedStatement stmt, T row) throws SQLException;
+    }
+
+    /**
+     * Читает поток пачками и передает их писателю.
+     * Пока писатель сохраняет одну пачку, в вызывающем потоке собирается следующая.
+     */
+    private <T> ImportResult importInChunks(Stream<ImportResult.Row<T>> rows, ImportResult result, String sql,
+                                            RowBinder<T> binder, ImportResult.Listener listener) {
+        CompletableFuture<ImportResult> inFlight = null;
+        List<ImportResult.Row<T>> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+
+        Iterator<ImportResult.Row<T>> iterator = rows.iterator();
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == IMPORT_CHUNK_SIZE || !iterator.hasNext()) {
+                awaitChunk(inFlight, result, listener);
+                inFlight = submitChunk(chunk, sql, binder);
+                chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+            }
+        }
+        awaitChunk(inFlight, result, listener);
+        return result;
+    }
+
+    private void awaitChunk(CompletableFuture<ImportResult> chunk, ImportResult result,
+                            ImportResult.Listener listener) {
+        if (chunk == null) {
+            return;
+        }
+        result.merge(chunk.join());
+        if (listener != null) {
+            listener.onProgress(result);
+        }
+    }
+
+    private <T> CompletableFuture<ImportResult> submitChunk(List<ImportResult.Row<T>> chunk,
+                                                            String sql, RowBinder<T> binder) {
+        return DatabaseUtil.write(conn -> importChunk(conn, chunk, sql, binder))
+                .exceptionally(e -> {
+                    // Пачка не зафиксирована целиком
+                    ImportResult failed = new ImportResult();
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    for (ImportResult.Row<T> row : chunk) {
+                        failed.addError(row.index, cause.getMessage());
+                    }
+                    return failed;
+                });
+    }
+
+    /**
+     * Сохраняет пачку через addBatch/executeBatch. Если пачка отклонена,
+     * она откатывается и повторяется построчно, чтобы собрать ошибки по строкам.
+     */
+    private <T> ImportResult importChunk(Connection conn, List<ImportResult.Row<T>> chunk,
+                                         String sql, RowBinder<T> binder) throws SQLException {
+        ImportResult result = new ImportResult();
+        Savepoint savepoint = conn.setSavepoint();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int batched = 0;
+            for (ImportResult.Row<T> row : chunk) {
+                try {
+                    binder.bind(stmt, row.value);
+                    stmt.addBatch();
+                    batched++;
+                } catch (SQLException | RuntimeException e) {
+                    result.addError(row.index, e.getMessage());
+                    stmt.clearParameters();
+                }
+            }
+            if (batched > 0) {
+                stmt.executeBatch();
+                result.addImported(batched);
+            }
+            conn.releaseSavepoint(savepoint);
+            return result;
+        } catch (BatchUpdateException e) {
+            conn.rollback(savepoint);
+            return importRowByRow(conn, chunk, sql, binder);
+        }
+    }
+
+    private <T> ImportResult importRowByRow(Connection conn, List<ImportResult.Row<T>> chunk,
+                                            String sql, RowBinder<T> binder) throws SQLException {
+        ImportResult result = new ImportResult();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (ImportResult.Row<T> row : chunk) {
+                try {
+                    binder.bind(stmt, row.value);
+                    stmt.executeUpdate();
+                    result.addImported(1);
+                } catch (SQLException | RuntimeException e) {
+                    result.addError(row.index, e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
     // Вспомогательные методы
     private List<ServiceRecord> getServiceRecords(String sql) {
-        try (Connection conn = DatabaseUtil.getConnection();
+        try (Connection conn = DatabaseUtil.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -376,7 +936,51 @@ public class DataService {
         stmt.setDouble(7, record.getCost());
     }
 
-    private ServiceRecord mapServiceRecord(ResultSet rs) throws SQLException {
+    private Page<ServiceRecord> toRecordsPage(List<ServiceRecord> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new Page<>(rows, null);
+        }
+        List<ServiceRecord> items = new ArrayList<>(rows.subList(0, pageSize));
+        ServiceRecord last = items.get(items.size() - 1);
+        return new Page<>(items, PageToken.encode(last.getDate().toString(), String.valueOf(last.getId())));
+    }
+
+    // Подготавливает запрос; при ошибке возвращает соединение в пул
+    private PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        try {
+            return conn.prepareStatement(sql);
+        } catch (SQLException e) {
+            DatabaseUtil.closeQuietly(conn);
+            throw e;
+        }
+    }
+
+    static SparePart mapSparePart(ResultSet rs) throws SQLException {
+        SparePart part = new SparePart();
+        part.setId(rs.getInt("id"));
+        part.setName(rs.getString("name"));
+        part.setCode(rs.getString("code"));
+        part.setDescription(rs.getString("description"));
+        part.setQuantity(rs.getInt("quantity"));
+        part.setPrice(rs.getDouble("price"));
+        part.setCompatibleModels(rs.getString("compatible_models"));
+        part.setSupplier(rs.getString("supplier"));
+        part.setMinQuantity(rs.getInt("min_quantity"));
+        return part;
+    }
+
+    private WorkSchedule mapWorkSchedule(ResultSet rs) throws SQLException {
+        WorkSchedule schedule = new WorkSchedule();
+        schedule.setId(rs.getInt("id"));
+        schedule.setMechanic(rs.getInt("mechanic_id"));
+        schedule.setRecordId(rs.getInt("record_id"));
+        schedule.setStartTime(rs.getTimestamp("start_time").toLocalDateTime());
+        schedule.setEndTime(rs.getTimestamp("end_time").toLocalDateTime());
+        schedule.setStatus(rs.getString("status"));
+        return schedule;
+    }
+
+    private static ServiceRecord mapServiceRecord(ResultSet rs) throws SQLException {
         ServiceRecord record = new ServiceRecord();
         record.setId(rs.getInt("id"));
         record.setDate(rs.getDate("date").toLocalDate());
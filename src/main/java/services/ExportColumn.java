@@ -0,0 +1,121 @@
+package services;
+
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Function;
+
+/**
+ * Описание столбца выгрузки: заголовок, тип значения и способ получить значение из строки.
+ * По типу приемники выбирают представление: числа и даты в Excel пишутся значениями со стилем,
+ * в PDF и CSV - текстом через общие форматтеры.
+ */
+public class ExportColumn<T> {
+    /**
+     * Тип значения столбца
+     */
+    public enum Type {
+        TEXT, INTEGER, MONEY, DATE, DATETIME
+    }
+
+    static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
+
+    private static final char DECIMAL_SEPARATOR = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+    private final String title;
+    private final Type type;
+    private final Function<T, ?> extractor;
+
+    private ExportColumn(String title, Type type, Function<T, ?> extractor) {
+        this.title = title;
+        this.type = type;
+        this.extractor = extractor;
+    }
+
+    public static <T> ExportColumn<T> text(String title, Function<T, String> extractor) {
+        return new ExportColumn<>(title, Type.TEXT, extractor);
+    }
+
+    public static <T> ExportColumn<T> integer(String title, Function<T, ? extends Number> extractor) {
+        return new ExportColumn<>(title, Type.INTEGER, extractor);
+    }
+
+    public static <T> ExportColumn<T> money(String title, Function<T, Double> extractor) {
+        return new ExportColumn<>(title, Type.MONEY, extractor);
+    }
+
+    public static <T> ExportColumn<T> date(String title, Function<T, LocalDate> extractor) {
+        return new ExportColumn<>(title, Type.DATE, extractor);
+    }
+
+    public static <T> ExportColumn<T> dateTime(String title, Function<T, LocalDateTime> extractor) {
+        return new ExportColumn<>(title, Type.DATETIME, extractor);
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Значение столбца для строки: String, Number, LocalDate, LocalDateTime или null
+     */
+    public Object value(T row) {
+        return extractor.apply(row);
+    }
+
+    /**
+     * Текст значения для отчета (PDF, расчет ширины столбцов): суммы с копейками и «руб.»
+     */
+    public String format(T row) {
+        Object value = value(row);
+        if (value == null) {
+            return "";
+        }
+        switch (type) {
+            case MONEY:
+                return formatMoney(((Number) value).doubleValue(), DECIMAL_SEPARATOR) + " руб.";
+            case DATE:
+                return ((LocalDate) value).format(DATE_FORMATTER);
+            case DATETIME:
+                return ((LocalDateTime) value).format(DATETIME_FORMATTER);
+            default:
+                return value.toString();
+        }
+    }
+
+    /**
+     * Текст значения для обмена данными (CSV): суммы с точкой и без единиц измерения
+     */
+    public String formatPlain(T row) {
+        Object value = value(row);
+        if (value == null) {
+            return "";
+        }
+        if (type == Type.MONEY) {
+            return formatMoney(((Number) value).doubleValue(), '.');
+        }
+        return type == Type.TEXT || type == Type.INTEGER ? value.toString() : format(row);
+    }
+
+    // Сумма с двумя знаками после разделителя без String.format: вызывается для каждой ячейки
+    private static String formatMoney(double amount, char separator) {
+        long kopecks = Math.round(amount * 100);
+        StringBuilder text = new StringBuilder(16);
+        if (kopecks < 0) {
+            text.append('-');
+            kopecks = -kopecks;
+        }
+        long fraction = kopecks % 100;
+        text.append(kopecks / 100).append(separator);
+        if (fraction < 10) {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+}
@@ -0,0 +1,54 @@
+package services;
+
+/**
+ * Метрики одной выгрузки: формат, количество строк, время и размер файла
+ */
+public class ExportMetrics {
+    private final ExportService.Format format;
+    private final long rows;
+    private final long elapsedNanos;
+    private final long bytes;
+
+    ExportMetrics(ExportService.Format format, long rows, long elapsedNanos, long bytes) {
+        this.format = format;
+        this.rows = rows;
+        this.elapsedNanos = elapsedNanos;
+        this.bytes = bytes;
+    }
+
+    public ExportService.Format getFormat() {
+        return format;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rows * 1e9 / elapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : bytes * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return "ExportMetrics{" +
+                "format=" + format +
+                ", rows=" + rows +
+                ", elapsedMillis=" + getElapsedMillis() +
+                ", bytes=" + bytes +
+                ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) +
+                ", megabytesPerSecond=" + String.format("%.2f", getMegabytesPerSecond()) +
+                '}';
+    }
+}
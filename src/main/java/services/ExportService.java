@@ -1,171 +1,149 @@
 package services;
 
-import com.itextpdf.text.Font;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import com.itextpdf.text.*;
-import com.itextpdf.text.pdf.PdfPTable;
-import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.DocumentException;
 import models.ServiceRecord;
 import models.SparePart;
 import models.WorkSchedule;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.List;
-
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка записей, запчастей и расписания в Excel, PDF и CSV.
+ * Все выгрузки идут через один конвейер: строки из потока за один проход
+ * передаются приемнику формата (XlsxExportSink, PdfExportSink, CsvExportSink)
+ * вместе с описаниями столбцов. Метрики последней выгрузки доступны через getLastMetrics.
+ */
 public class ExportService {
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
-
-    public void exportServiceRecordsToExcel(List<ServiceRecord> records, String filePath) throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Записи сервиса");
-
-        // Стили для ячеек
-        CellStyle headerStyle = createHeaderStyle(workbook);
-        CellStyle dateStyle = createDateStyle(workbook);
-        CellStyle currencyStyle = createCurrencyStyle(workbook);
-
-        // Создание заголовков
-        Row headerRow = sheet.createRow(0);
-        String[] columns = {"Дата", "Клиент", "Телефон", "Услуга", "Модель", "Госномер", "Стоимость", "Статус", "Механик"};
-
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        // Заполнение данными
-        int rowNum = 1;
-        for (ServiceRecord record : records) {
-            Row row = sheet.createRow(rowNum++);
-
-            // Дата
-            Cell dateCell = row.createCell(0);
-            dateCell.setCellValue(record.getDate().format(DATE_FORMATTER));
-            dateCell.setCellStyle(dateStyle);
-
-            // Клиент
-            row.createCell(1).setCellValue(record.getClientName());
+    private static final Logger logger = Logger.getLogger(ExportService.class.getName());
 
-            // Телефон
-            row.createCell(2).setCellValue(record.getClientPhone());
-
-            // Услуга
-            row.createCell(3).setCellValue(record.getServiceType());
-
-            // Модель авто
-            row.createCell(4).setCellValue(record.getCarModel());
-
-            // Госномер
-            row.createCell(5).setCellValue(record.getLicensePlate());
-
-            // Стоимость
-            Cell costCell = row.createCell(6);
-            costCell.setCellValue(record.getCost());
-            costCell.setCellStyle(currencyStyle);
-
-            // Статус
-            row.createCell(7).setCellValue(record.getStatus());
+    /**
+     * Формат файла выгрузки
+     */
+    public enum Format {
+        XLSX, PDF, CSV
+    }
 
-            // ID механика
-            row.createCell(8).setCellValue(record.getAssignedMechanicId());
-        }
+    public static final List<ExportColumn<ServiceRecord>> SERVICE_RECORD_COLUMNS = List.of(
+            ExportColumn.date("Дата", ServiceRecord::getDate),
+            ExportColumn.text("Клиент", ServiceRecord::getClientName),
+            ExportColumn.text("Телефон", ServiceRecord::getClientPhone),
+            ExportColumn.text("Услуга", ServiceRecord::getServiceType),
+            ExportColumn.text("Модель", ServiceRecord::getCarModel),
+            ExportColumn.text("Госномер", ServiceRecord::getLicensePlate),
+            ExportColumn.money("Стоимость", ServiceRecord::getCost),
+            ExportColumn.text("Статус", ServiceRecord::getStatus),
+            ExportColumn.integer("Механик", ServiceRecord::getAssignedMechanicId));
+
+    // В PDF номер механика не выводится: без него таблица помещается на страницу
+    private static final List<ExportColumn<ServiceRecord>> SERVICE_RECORD_PDF_COLUMNS =
+            SERVICE_RECORD_COLUMNS.subList(0, SERVICE_RECORD_COLUMNS.size() - 1);
+
+    public static final List<ExportColumn<SparePart>> SPARE_PART_COLUMNS = List.of(
+            ExportColumn.text("Название", SparePart::getName),
+            ExportColumn.text("Код", SparePart::getCode),
+            ExportColumn.text("Совместимость", SparePart::getCompatibleModels),
+            ExportColumn.integer("Количество", SparePart::getQuantity),
+            ExportColumn.money("Цена", SparePart::getPrice),
+            ExportColumn.text("Поставщик", SparePart::getSupplier),
+            ExportColumn.integer("Минимальный запас", SparePart::getMinQuantity));
+
+    public static final List<ExportColumn<WorkSchedule>> WORK_SCHEDULE_COLUMNS = List.of(
+            ExportColumn.date("Дата", ws -> ws.getStartTime() == null ? null : ws.getStartTime().toLocalDate()),
+            ExportColumn.integer("Механик", WorkSchedule::getMechanicId),
+            ExportColumn.integer("Запись", WorkSchedule::getRecordId),
+            ExportColumn.dateTime("Начало", WorkSchedule::getStartTime),
+            ExportColumn.dateTime("Конец", WorkSchedule::getEndTime),
+            ExportColumn.text("Статус", WorkSchedule::getStatus),
+            ExportColumn.text("Примечания", WorkSchedule::getNotes));
+
+    private volatile ExportMetrics lastMetrics;
 
-        // Автонастройка ширины столбцов
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
-        }
+    public void exportServiceRecordsToExcel(List<ServiceRecord> records, String filePath) throws IOException {
+        exportServiceRecordsToExcel(records.stream(), filePath);
+    }
 
-        // Сохранение файла
-        try (FileOutputStream outputStream = new FileOutputStream(filePath)) {
-            workbook.write(outputStream);
-        }
-        workbook.close();
+    /**
+     * Потоковая выгрузка записей в Excel; память не зависит от количества записей
+     * @return метрики выгрузки
+     */
+    public ExportMetrics exportServiceRecordsToExcel(Stream<ServiceRecord> records, String filePath)
+            throws IOException {
+        return export(records, SERVICE_RECORD_COLUMNS, Format.XLSX, "Записи сервиса", filePath);
     }
 
     public void exportServiceRecordsToPdf(List<ServiceRecord> records, String filePath) throws DocumentException, IOException {
-        Document document = new Document();
-        PdfWriter.getInstance(document, new FileOutputStream(filePath));
-        document.open();
-
-        // Заголовок
-        Font titleFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-        Paragraph title = new Paragraph("Отчет по услугам автосервиса", titleFont);
-        title.setAlignment(Element.ALIGN_CENTER);
-        title.setSpacingAfter(20);
-        document.add(title);
-
-        // Информация о периоде и количестве записей
-        Font infoFont = FontFactory.getFont(FontFactory.HELVETICA, 12);
-        Paragraph info = new Paragraph(
-                String.format("Всего записей: %d", records.size()), infoFont);
-        info.setSpacingAfter(10);
-        document.add(info);
-
-        // Таблица
-        PdfPTable table = new PdfPTable(8);
-        table.setWidthPercentage(100);
-        table.setSpacingBefore(10);
-
-        // Заголовки таблицы
-        String[] headers = {"Дата", "Клиент", "Телефон", "Услуга", "Модель", "Госномер", "Стоимость", "Статус"};
-        for (String header : headers) {
-            table.addCell(new Phrase(header, FontFactory.getFont(FontFactory.HELVETICA_BOLD)));
-        }
-
-        // Данные
-        for (ServiceRecord record : records) {
-            table.addCell(record.getDate().format(DATE_FORMATTER));
-            table.addCell(record.getClientName());
-            table.addCell(record.getClientPhone());
-            table.addCell(record.getServiceType());
-            table.addCell(record.getCarModel());
-            table.addCell(record.getLicensePlate());
-            table.addCell(String.format("%.2f руб.", record.getCost()));
-            table.addCell(record.getStatus());
-        }
+        exportServiceRecordsToPdf(records.stream(), filePath);
+    }
 
-        document.add(table);
-        document.close();
+    /**
+     * Потоковая выгрузка записей в PDF порциями; готовые страницы сразу пишутся в файл
+     */
+    public void exportServiceRecordsToPdf(Stream<ServiceRecord> records, String filePath) throws DocumentException, IOException {
+        export(records, SERVICE_RECORD_PDF_COLUMNS, Format.PDF, "Отчет по услугам автосервиса", filePath);
     }
 
     public void exportSparePartsToExcel(List<SparePart> parts, String filePath) throws IOException {
-        // Реализация экспорта запчастей в Excel
+        exportSparePartsToExcel(parts.stream(), filePath);
+    }
+
+    public void exportSparePartsToExcel(Stream<SparePart> parts, String filePath) throws IOException {
+        export(parts, SPARE_PART_COLUMNS, Format.XLSX, "Запчасти", filePath);
     }
 
     public void exportWorkScheduleToPdf(List<WorkSchedule> schedule, String filePath) throws DocumentException, IOException {
-        // Реализация экспорта расписания в PDF
+        exportWorkScheduleToPdf(schedule.stream(), filePath);
     }
 
-    private CellStyle createHeaderStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        org.apache.poi.ss.usermodel.Font font = workbook.createFont();
-        font.setBold(true);
-        style.setFont(font);
-        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        return style;
+    public void exportWorkScheduleToPdf(Stream<WorkSchedule> schedule, String filePath) throws DocumentException, IOException {
+        export(schedule, WORK_SCHEDULE_COLUMNS, Format.PDF, "Расписание работ", filePath);
     }
 
-    private CellStyle createDateStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        CreationHelper createHelper = workbook.getCreationHelper();
-        style.setDataFormat(createHelper.createDataFormat().getFormat("dd.mm.yyyy"));
-        return style;
+    /**
+     * Выгружает строки потока в файл указанного формата за один проход
+     * @param title название листа Excel или заголовок отчета PDF; для CSV не используется
+     * @return метрики выгрузки
+     */
+    public <T> ExportMetrics export(Stream<T> rows, List<ExportColumn<T>> columns, Format format,
+                                    String title, String filePath) throws IOException {
+        long start = System.nanoTime();
+        long count = 0;
+        try (ExportSink<T> sink = createSink(format, title, filePath)) {
+            sink.begin(columns);
+            Iterator<T> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                sink.write(iterator.next());
+                count++;
+            }
+            sink.finish();
+        }
+        ExportMetrics metrics = new ExportMetrics(format, count, System.nanoTime() - start,
+                Files.size(Paths.get(filePath)));
+        lastMetrics = metrics;
+        logger.info("Выгрузка " + filePath + ": " + metrics);
+        return metrics;
     }
 
-    private CellStyle createCurrencyStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        CreationHelper createHelper = workbook.getCreationHelper();
-        style.setDataFormat(createHelper.createDataFormat().getFormat("#,##0.00\" руб.\""));
-        return style;
+    /**
+     * Метрики последней выгрузки или null, если выгрузок не было
+     */
+    public ExportMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    private static <T> ExportSink<T> createSink(Format format, String title, String filePath) {
+        switch (format) {
+            case XLSX:
+                return new XlsxExportSink<>(filePath, title);
+            case PDF:
+                return new PdfExportSink<>(filePath, title);
+            default:
+                return new CsvExportSink<>(filePath);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Приемник табличной выгрузки в файл определенного формата.
+ * Порядок вызовов: begin, write для каждой строки, finish; close вызывается всегда
+ * и освобождает ресурсы, в том числе после ошибки.
+ */
+public interface ExportSink<T> extends Closeable {
+    void begin(List<ExportColumn<T>> columns) throws IOException;
+
+    void write(T row) throws IOException;
+
+    /**
+     * Дописывает хвост файла; после этого вызова файл готов
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,132 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Итог массовой загрузки данных: количество обработанных строк и ошибки по строкам.
+ * Хранится не более MAX_ERRORS описаний ошибок, остальные только подсчитываются,
+ * чтобы загрузка большого файла с ошибками не занимала память.
+ */
+public class ImportResult {
+    public static final int MAX_ERRORS = 1000;
+
+    /**
+     * Слушатель прогресса загрузки; вызывается в потоке, запустившем загрузку, после каждой пачки
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onProgress(ImportResult progress);
+    }
+
+    /**
+     * Ошибка загрузки одной строки
+     */
+    public static class RowError {
+        private final long rowIndex;
+        private final String message;
+
+        public RowError(long rowIndex, String message) {
+            this.rowIndex = rowIndex;
+            this.message = message;
+        }
+
+        public long getRowIndex() {
+            return rowIndex;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Строка " + rowIndex + ": " + message;
+        }
+    }
+
+    /**
+     * Загружаемая строка с номером строки данных в источнике; по этому номеру сообщаются ошибки,
+     * даже если часть строк источника отброшена до загрузки
+     */
+    static class Row<T> {
+        final long index;
+        final T value;
+
+        Row(long index, T value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    private long processed;
+    private long imported;
+    private long failed;
+    private final List<RowError> errors = new ArrayList<>();
+    private final long startedAt = System.nanoTime();
+    private long elapsedNanos;
+
+    void addImported(long count) {
+        processed += count;
+        imported += count;
+        elapsedNanos = System.nanoTime() - startedAt;
+    }
+
+    void addError(long rowIndex, String message) {
+        processed++;
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(rowIndex, message));
+        }
+        elapsedNanos = System.nanoTime() - startedAt;
+    }
+
+    void merge(ImportResult other) {
+        processed += other.processed;
+        imported += other.imported;
+        failed += other.failed;
+        for (RowError error : other.errors) {
+            if (errors.size() >= MAX_ERRORS) {
+                break;
+            }
+            errors.add(error);
+        }
+        elapsedNanos = System.nanoTime() - startedAt;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : processed * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "processed=" + processed +
+                ", imported=" + imported +
+                ", failed=" + failed +
+                ", elapsedMillis=" + getElapsedMillis() +
+                ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) +
+                '}';
+    }
+}
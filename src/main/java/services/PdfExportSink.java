@@ -0,0 +1,107 @@
+package services;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.FontFactory;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Выгрузка в PDF порциями.
+ * Таблица помечена незавершенной и добавляется в документ каждые CHUNK_ROWS строк:
+ * iText выводит готовые страницы в файл и освобождает записанные строки,
+ * поэтому в памяти не больше одной порции. Строка заголовков повторяется на каждой странице.
+ * Количество строк заранее неизвестно и выводится после таблицы.
+ */
+public class PdfExportSink<T> implements ExportSink<T> {
+    private static final int CHUNK_ROWS = 500;
+
+    private static final Font TITLE_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
+    private static final Font HEADER_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD);
+    private static final Font INFO_FONT = FontFactory.getFont(FontFactory.HELVETICA, 12);
+
+    private final String filePath;
+    private final String title;
+    private final Document document = new Document();
+
+    private List<ExportColumn<T>> columns;
+    private PdfPTable table;
+    private long count;
+
+    public PdfExportSink(String filePath, String title) {
+        this.filePath = filePath;
+        this.title = title;
+    }
+
+    @Override
+    public void begin(List<ExportColumn<T>> columns) throws IOException {
+        this.columns = columns;
+        try {
+            PdfWriter.getInstance(document, new BufferedOutputStream(new FileOutputStream(filePath)));
+            document.open();
+
+            // Заголовок
+            Paragraph titleParagraph = new Paragraph(title, TITLE_FONT);
+            titleParagraph.setAlignment(Element.ALIGN_CENTER);
+            titleParagraph.setSpacingAfter(20);
+            document.add(titleParagraph);
+
+            // Таблица с заголовками
+            table = new PdfPTable(columns.size());
+            table.setWidthPercentage(100);
+            table.setSpacingBefore(10);
+            table.setHeaderRows(1);
+            table.setComplete(false);
+            for (ExportColumn<T> column : columns) {
+                table.addCell(new Phrase(column.getTitle(), HEADER_FONT));
+            }
+        } catch (DocumentException e) {
+            throw new IOException("Ошибка формирования PDF: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void write(T row) throws IOException {
+        for (ExportColumn<T> column : columns) {
+            table.addCell(column.format(row));
+        }
+        if (++count % CHUNK_ROWS == 0) {
+            add(table);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        table.setComplete(true);
+        add(table);
+
+        // Количество строк
+        Paragraph info = new Paragraph(String.format("Всего записей: %d", count), INFO_FONT);
+        info.setSpacingBefore(10);
+        add(info);
+    }
+
+    @Override
+    public void close() {
+        if (document.isOpen()) {
+            document.close();
+        }
+    }
+
+    private void add(Element element) throws IOException {
+        try {
+            document.add(element);
+        } catch (DocumentException e) {
+            throw new IOException("Ошибка формирования PDF: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package services;
+
+import config.RevenueRollupSchema;
+import util.DatabaseUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Выручка по типам услуг и механикам из сводной таблицы revenue_rollup.
+ * Запросы читают готовые бакеты вместо записей сервиса: график за пять лет
+ * по месяцам - несколько сотен строк таблицы.
+ */
+public class RevenueRollupService {
+    /**
+     * Размер бакета графика
+     */
+    public enum Granularity {
+        DAY(RevenueRollupSchema.GRANULARITY_DAY),
+        WEEK(RevenueRollupSchema.GRANULARITY_WEEK),
+        MONTH(RevenueRollupSchema.GRANULARITY_MONTH);
+
+        private final String code;
+
+        Granularity(String code) {
+            this.code = code;
+        }
+
+        /**
+         * Дата начала бакета, в который попадает день
+         */
+        public LocalDate bucketStart(LocalDate date) {
+            switch (this) {
+                case WEEK:
+                    return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH:
+                    return date.withDayOfMonth(1);
+                default:
+                    return date;
+            }
+        }
+    }
+
+    private static final String SERIES_SQL =
+            "SELECT bucket, dim_key, kopecks FROM revenue_rollup " +
+                    "WHERE dimension = ? AND granularity = ? AND bucket BETWEEN ? AND ? AND record_count > 0 " +
+                    "ORDER BY bucket, dim_key";
+
+    // Полные месяцы периода из месячных бакетов, края периода из дневных
+    private static final String TOTALS_SQL =
+            "SELECT dim_key, SUM(kopecks) AS kopecks FROM revenue_rollup " +
+                    "WHERE dimension = ? AND (" +
+                    "(granularity = '" + RevenueRollupSchema.GRANULARITY_MONTH + "' AND bucket BETWEEN ? AND ?) OR " +
+                    "(granularity = '" + RevenueRollupSchema.GRANULARITY_DAY + "' " +
+                    "AND (bucket BETWEEN ? AND ? OR bucket BETWEEN ? AND ?))) " +
+                    "GROUP BY dim_key HAVING SUM(record_count) > 0 ORDER BY dim_key";
+
+    /**
+     * Выручка по типам услуг за каждый бакет периода
+     * @return выручка по типам услуг, упорядоченная по дате начала бакета
+     */
+    public Map<LocalDate, Map<String, Double>> getRevenueSeriesByServiceType(Granularity granularity,
+                                                                           LocalDate startDate, LocalDate endDate) {
+        return series(RevenueRollupSchema.DIMENSION_SERVICE_TYPE, granularity, startDate, endDate, key -> key);
+    }
+
+    /**
+     * Выручка по механикам за каждый бакет периода; записи без механика учитываются под id 0
+     */
+    public Map<LocalDate, Map<Integer, Double>> getRevenueSeriesByMechanic(Granularity granularity,
+                                                                         LocalDate startDate, LocalDate endDate) {
+        return series(RevenueRollupSchema.DIMENSION_MECHANIC, granularity, startDate, endDate,
+                RevenueRollupService::mechanicId);
+    }
+
+    /**
+     * Выручка по типам услуг за произвольный период (границы включительно)
+     */
+    public Map<String, Double> getRevenueByServiceType(LocalDate startDate, LocalDate endDate) {
+        return totals(RevenueRollupSchema.DIMENSION_SERVICE_TYPE, startDate, endDate, key -> key);
+    }
+
+    /**
+     * Выручка по механикам за произвольный период (границы включительно)
+     */
+    public Map<Integer, Double> getRevenueByMechanic(LocalDate startDate, LocalDate endDate) {
+        return totals(RevenueRollupSchema.DIMENSION_MECHANIC, startDate, endDate, RevenueRollupService::mechanicId);
+    }
+
+    private <K> Map<LocalDate, Map<K, Double>> series(String dimension, Granularity granularity,
+                                                      LocalDate startDate, LocalDate endDate,
+                                                      Function<String, K> keyMapper) {
+        Map<LocalDate, Map<K, Double>> result = new TreeMap<>();
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(SERIES_SQL)) {
+            stmt.setString(1, dimension);
+            stmt.setString(2, granularity.code);
+            // Бакет, начавшийся до начала периода, тоже входит в график
+            stmt.setString(3, granularity.bucketStart(startDate).toString());
+            stmt.setString(4, endDate.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.computeIfAbsent(LocalDate.parse(rs.getString("bucket")), b -> new LinkedHashMap<>())
+                            .put(keyMapper.apply(rs.getString("dim_key")), rs.getLong("kopecks") / 100.0);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    private <K> Map<K, Double> totals(String dimension, LocalDate startDate, LocalDate endDate,
+                                      Function<String, K> keyMapper) {
+        // Первый и последний полные месяцы периода; если их нет, весь период читается по дням
+        LocalDate firstFullMonth = startDate.getDayOfMonth() == 1
+                ? startDate : startDate.plusMonths(1).withDayOfMonth(1);
+        LocalDate endOfLastFullMonth = endDate.equals(endDate.with(TemporalAdjusters.lastDayOfMonth()))
+                ? endDate : endDate.withDayOfMonth(1).minusDays(1);
+
+        String monthsFrom;
+        String monthsTo;
+        String headTo;
+        String tailFrom;
+        if (firstFullMonth.isAfter(endOfLastFullMonth)) {
+            // Пустой диапазон месяцев и один дневной диапазон на весь период
+            monthsFrom = "9999-12-31";
+            monthsTo = "0000-01-01";
+            headTo = endDate.toString();
+            tailFrom = "9999-12-31";
+        } else {
+            monthsFrom = firstFullMonth.toString();
+            monthsTo = endOfLastFullMonth.withDayOfMonth(1).toString();
+            headTo = firstFullMonth.minusDays(1).toString();
+            tailFrom = endOfLastFullMonth.plusDays(1).toString();
+        }
+
+        Map<K, Double> result = new LinkedHashMap<>();
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(TOTALS_SQL)) {
+            stmt.setString(1, dimension);
+            stmt.setString(2, monthsFrom);
+            stmt.setString(3, monthsTo);
+            stmt.setString(4, startDate.toString());
+            stmt.setString(5, headTo);
+            stmt.setString(6, tailFrom);
+            stmt.setString(7, endDate.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(keyMapper.apply(rs.getString("dim_key")), rs.getLong("kopecks") / 100.0);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    private static Integer mechanicId(String key) {
+        return key.isEmpty() ? 0 : Integer.valueOf(key);
+    }
+}
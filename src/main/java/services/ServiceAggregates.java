@@ -0,0 +1,220 @@
+package services;
+
+import models.ServiceRecord;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Накопленные агрегаты записей сервиса по дням и статусам.
+ * Для каждой пары (день, статус) хранятся количество и сумма стоимости
+ * с разбивкой по типу услуги и модели автомобиля. Агрегаты строятся один раз
+ * и дальше обновляются при каждом изменении записи, поэтому статистика
+ * за период считается по числу групп, а не по числу записей.
+ *
+ * Стоимость хранится в копейках, чтобы добавление и удаление записи
+ * не накапливали ошибку округления.
+ */
+public class ServiceAggregates {
+    /**
+     * Источник готовых групп (день, статус, тип услуги, модель) для построения агрегатов
+     */
+    @FunctionalInterface
+    public interface GroupSource {
+        void forEach(GroupConsumer action) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface GroupConsumer {
+        void accept(LocalDate day, String status, String serviceType, String carModel, long count, long kopecks);
+    }
+
+    private final TreeMap<LocalDate, Map<String, Cell>> days = new TreeMap<>();
+    private boolean loaded;
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Заменяет агрегаты построенными по полному набору записей
+     */
+    public synchronized void load(GroupSource source) throws SQLException {
+        days.clear();
+        loaded = false;
+        source.forEach(this::addGroup);
+        loaded = true;
+    }
+
+    /**
+     * Сбрасывает агрегаты; до следующей загрузки изменения записей не учитываются
+     */
+    public synchronized void invalidate() {
+        days.clear();
+        loaded = false;
+    }
+
+    public synchronized void add(ServiceRecord record) {
+        if (loaded) {
+            apply(record, 1);
+        }
+    }
+
+    public synchronized void remove(ServiceRecord record) {
+        if (loaded) {
+            apply(record, -1);
+        }
+    }
+
+    /**
+     * Сводка за период
+     * @param from начало периода включительно; null - без ограничения
+     * @param to конец периода включительно; null - без ограничения
+     * @param status статус записей; null - все статусы
+     */
+    public synchronized Summary summarize(LocalDate from, LocalDate to, String status) {
+        Map<LocalDate, Map<String, Cell>> range = days;
+        if (from != null && to != null) {
+            range = days.subMap(from, true, to, true);
+        } else if (from != null) {
+            range = days.tailMap(from, true);
+        } else if (to != null) {
+            range = days.headMap(to, true);
+        }
+
+        Summary summary = new Summary();
+        for (Map<String, Cell> statuses : range.values()) {
+            if (status != null) {
+                Cell cell = statuses.get(status);
+                if (cell != null) {
+                    summary.add(status, cell);
+                }
+            } else {
+                statuses.forEach(summary::add);
+            }
+        }
+        return summary;
+    }
+
+    private void apply(ServiceRecord record, int sign) {
+        if (record.getDate() == null) {
+            return;
+        }
+        addGroup(record.getDate(), record.getStatus(), record.getServiceType(), record.getCarModel(),
+                sign, sign * toKopecks(record.getCost()));
+    }
+
+    private void addGroup(LocalDate day, String status, String serviceType, String carModel,
+                          long count, long kopecks) {
+        Map<String, Cell> statuses = days.computeIfAbsent(day, d -> new HashMap<>());
+        Cell cell = statuses.computeIfAbsent(status, s -> new Cell());
+        cell.total.add(count, kopecks);
+        addTo(cell.byType, serviceType, count, kopecks);
+        addTo(cell.byModel, carModel, count, kopecks);
+
+        // Пустые группы удаляются, чтобы их число не росло со временем
+        if (cell.total.count == 0) {
+            statuses.remove(status);
+            if (statuses.isEmpty()) {
+                days.remove(day);
+            }
+        }
+    }
+
+    private static void addTo(Map<String, Total> groups, String key, long count, long kopecks) {
+        Total total = groups.computeIfAbsent(key, k -> new Total());
+        total.add(count, kopecks);
+        if (total.count == 0) {
+            groups.remove(key);
+        }
+    }
+
+    static long toKopecks(double cost) {
+        return Math.round(cost * 100);
+    }
+
+    // Количество и сумма стоимости в копейках
+    private static class Total {
+        private long count;
+        private long kopecks;
+
+        void add(long count, long kopecks) {
+            this.count += count;
+            this.kopecks += kopecks;
+        }
+
+        void add(Total other) {
+            count += other.count;
+            kopecks += other.kopecks;
+        }
+    }
+
+    private static class Cell {
+        private final Total total = new Total();
+        private final Map<String, Total> byType = new HashMap<>();
+        private final Map<String, Total> byModel = new HashMap<>();
+    }
+
+    /**
+     * Сводка по записям за период
+     */
+    public static class Summary {
+        private final Total total = new Total();
+        private final Map<String, Total> byType = new HashMap<>();
+        private final Map<String, Total> byStatus = new HashMap<>();
+        private final Map<String, Total> byModel = new HashMap<>();
+
+        private void add(String status, Cell cell) {
+            total.add(cell.total);
+            byStatus.computeIfAbsent(status, k -> new Total()).add(cell.total);
+            cell.byType.forEach((type, t) -> byType.computeIfAbsent(type, k -> new Total()).add(t));
+            cell.byModel.forEach((model, t) -> byModel.computeIfAbsent(model, k -> new Total()).add(t));
+        }
+
+        public long getRecordCount() {
+            return total.count;
+        }
+
+        public double getTotalRevenue() {
+            return total.kopecks / 100.0;
+        }
+
+        public double getAverageCost() {
+            return total.count == 0 ? 0.0 : total.kopecks / 100.0 / total.count;
+        }
+
+        public Map<String, Long> getCountByType() {
+            return counts(byType);
+        }
+
+        public Map<String, Double> getRevenueByType() {
+            Map<String, Double> result = new HashMap<>();
+            byType.forEach((type, t) -> result.put(type, t.kopecks / 100.0));
+            return Collections.unmodifiableMap(result);
+        }
+
+        public Map<String, Double> getAverageCostByType() {
+            Map<String, Double> result = new HashMap<>();
+            byType.forEach((type, t) -> result.put(type, t.kopecks / 100.0 / t.count));
+            return Collections.unmodifiableMap(result);
+        }
+
+        public Map<String, Long> getCountByStatus() {
+            return counts(byStatus);
+        }
+
+        public Map<String, Long> getCountByModel() {
+            return counts(byModel);
+        }
+
+        private static Map<String, Long> counts(Map<String, Total> groups) {
+            Map<String, Long> result = new HashMap<>();
+            groups.forEach((key, t) -> result.put(key, t.count));
+            return Collections.unmodifiableMap(result);
+        }
+    }
+}
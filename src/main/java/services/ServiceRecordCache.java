@@ -0,0 +1,198 @@
+package services;
+
+import models.ServiceRecord;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+
+/**
+ * Ограниченный по размеру кэш записей сервиса по id.
+ * Повторные обращения к одной записи (оплата, уведомления, расписание)
+ * обслуживаются из памяти; при переполнении вытесняется давно не использованная запись (LRU).
+ * Загрузка из базы выполняется вне блокировки; результат загрузки, начатой до изменения
+ * или удаления записи, в кэш не попадает.
+ */
+public class ServiceRecordCache {
+    // Верхние границы интервалов гистограммы времени загрузки, в микросекундах
+    private static final long[] LATENCY_BOUNDS_MICROS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 100_000};
+
+    private final int capacity;
+    private final IntFunction<ServiceRecord> loader;
+    private final LinkedHashMap<Integer, ServiceRecord> records;
+    // Увеличивается при каждой инвалидации; загрузка, пережившая инвалидацию, не сохраняется
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLongArray loadLatency = new AtomicLongArray(LATENCY_BOUNDS_MICROS.length + 1);
+
+    /**
+     * @param capacity максимальное количество записей в кэше
+     * @param loader загрузка записи из базы данных; возвращает null, если записи нет
+     */
+    public ServiceRecordCache(int capacity, IntFunction<ServiceRecord> loader) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным");
+        }
+        this.capacity = capacity;
+        this.loader = loader;
+        this.records = new LinkedHashMap<Integer, ServiceRecord>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ServiceRecord> eldest) {
+                if (size() > ServiceRecordCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Возвращает копию записи из кэша или загружает ее из базы
+     * @return запись или null, если записи нет
+     */
+    public ServiceRecord get(int id) {
+        long loadGeneration;
+        synchronized (this) {
+            ServiceRecord cached = records.get(id);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return copy(cached);
+            }
+            loadGeneration = generation;
+        }
+
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        ServiceRecord loaded = loader.apply(id);
+        recordLatency(System.nanoTime() - start);
+        if (loaded == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                records.put(id, copy(loaded));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Удаляет запись из кэша после ее изменения или удаления в базе
+     */
+    public synchronized void invalidate(int id) {
+        generation++;
+        records.remove(id);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        records.clear();
+    }
+
+    public synchronized Metrics getMetrics() {
+        long[] histogram = new long[loadLatency.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = loadLatency.get(i);
+        }
+        return new Metrics(hits.get(), misses.get(), evictions.get(), records.size(), histogram);
+    }
+
+    private void recordLatency(long nanos) {
+        long micros = nanos / 1_000;
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS_MICROS.length && micros > LATENCY_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        loadLatency.incrementAndGet(bucket);
+    }
+
+    // Вызывающий код может изменять полученную запись, поэтому кэш хранит и отдает копии
+    private static ServiceRecord copy(ServiceRecord record) {
+        ServiceRecord copy = new ServiceRecord();
+        copy.setId(record.getId());
+        copy.setDate(record.getDate());
+        copy.setClientName(record.getClientName());
+        copy.setClientPhone(record.getClientPhone());
+        copy.setServiceType(record.getServiceType());
+        copy.setCarModel(record.getCarModel());
+        copy.setLicensePlate(record.getLicensePlate());
+        copy.setCost(record.getCost());
+        copy.setStatus(record.getStatus());
+        copy.setAssignedMechanicId(record.getAssignedMechanicId());
+        copy.setNotes(record.getNotes());
+        return copy;
+    }
+
+    /**
+     * Снимок метрик кэша записей
+     */
+    public static class Metrics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final long[] loadLatencyHistogram;
+
+        Metrics(long hits, long misses, long evictions, int size, long[] loadLatencyHistogram) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.loadLatencyHistogram = loadLatencyHistogram;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : hits / (double) total;
+        }
+
+        /**
+         * Количество загрузок из базы по интервалам времени;
+         * границы интервалов возвращает {@link #getLoadLatencyBoundsMicros()}, последний интервал открытый
+         */
+        public long[] getLoadLatencyHistogram() {
+            return loadLatencyHistogram.clone();
+        }
+
+        public static long[] getLoadLatencyBoundsMicros() {
+            return LATENCY_BOUNDS_MICROS.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "ServiceRecordCache.Metrics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", size=" + size +
+                    ", hitRate=" + String.format("%.3f", getHitRate()) +
+                    ", loadLatencyMicros<=" + Arrays.toString(LATENCY_BOUNDS_MICROS) +
+                    ": " + Arrays.toString(loadLatencyHistogram) +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package services;
+
+import models.ServiceRecord;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Статистика по набору записей сервиса: количество, сумма, минимум, максимум
+ * и среднее стоимости в целом и по типу услуги, статусу и модели автомобиля.
+ * Собирается одним проходом коллектором {@link #collector()}; накопители групп
+ * хранят примитивные значения и создаются по одному на группу.
+ */
+public class ServiceStatsSnapshot {
+    private final GroupStats total;
+    private final ServiceRecord mostExpensive;
+    private final ServiceRecord cheapest;
+    private final Map<String, GroupStats> byType;
+    private final Map<String, GroupStats> byStatus;
+    private final Map<String, GroupStats> byModel;
+
+    private ServiceStatsSnapshot(Accumulator acc) {
+        this.total = acc.total.toStats();
+        this.mostExpensive = acc.mostExpensive;
+        this.cheapest = acc.cheapest;
+        this.byType = toStats(acc.byType);
+        this.byStatus = toStats(acc.byStatus);
+        this.byModel = toStats(acc.byModel);
+    }
+
+    /**
+     * Коллектор, собирающий статистику за один проход по записям
+     */
+    public static Collector<ServiceRecord, ?, ServiceStatsSnapshot> collector() {
+        return Collector.of(Accumulator::new, Accumulator::add, Accumulator::merge, ServiceStatsSnapshot::new);
+    }
+
+    public GroupStats getTotal() {
+        return total;
+    }
+
+    public ServiceRecord getMostExpensive() {
+        return mostExpensive;
+    }
+
+    public ServiceRecord getCheapest() {
+        return cheapest;
+    }
+
+    public Map<String, GroupStats> getByType() {
+        return byType;
+    }
+
+    public Map<String, GroupStats> getByStatus() {
+        return byStatus;
+    }
+
+    public Map<String, GroupStats> getByModel() {
+        return byModel;
+    }
+
+    public Map<String, Long> getCountByType() {
+        return map(byType, GroupStats::getCount);
+    }
+
+    public Map<String, Long> getCountByStatus() {
+        return map(byStatus, GroupStats::getCount);
+    }
+
+    public Map<String, Long> getCountByModel() {
+        return map(byModel, GroupStats::getCount);
+    }
+
+    public Map<String, Double> getSumByType() {
+        return map(byType, GroupStats::getSum);
+    }
+
+    public Map<String, Double> getMeanByType() {
+        return map(byType, GroupStats::getMean);
+    }
+
+    /**
+     * Доля каждого типа услуги в общем количестве записей, в процентах
+     */
+    public Map<String, Double> getPercentageByType() {
+        long count = total.getCount();
+        return map(byType, stats -> (double) stats.getCount() / count * 100);
+    }
+
+    private static <V> Map<String, V> map(Map<String, GroupStats> groups, Function<GroupStats, V> value) {
+        Map<String, V> result = new HashMap<>(groups.size() * 2);
+        groups.forEach((key, stats) -> result.put(key, value.apply(stats)));
+        return result;
+    }
+
+    private static Map<String, GroupStats> toStats(Map<String, MutableGroup> groups) {
+        Map<String, GroupStats> result = new HashMap<>(groups.size() * 2);
+        groups.forEach((key, group) -> result.put(key, group.toStats()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Количество, сумма, минимум, максимум и среднее стоимости в группе
+     */
+    public static class GroupStats {
+        private final long count;
+        private final double sum;
+        private final double min;
+        private final double max;
+
+        GroupStats(long count, double sum, double min, double max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+
+        @Override
+        public String toString() {
+            return "GroupStats{" +
+                    "count=" + count +
+                    ", sum=" + sum +
+                    ", min=" + min +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+
+    // Сумма ведется в копейках: целочисленное сложение не зависит от порядка записей
+    private static class MutableGroup {
+        private long count;
+        private long kopecks;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(double cost, long costKopecks) {
+            count++;
+            kopecks += costKopecks;
+            if (cost < min) {
+                min = cost;
+            }
+            if (cost > max) {
+                max = cost;
+            }
+        }
+
+        void merge(MutableGroup other) {
+            count += other.count;
+            kopecks += other.kopecks;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        GroupStats toStats() {
+            return count == 0
+                    ? new GroupStats(0, 0.0, 0.0, 0.0)
+                    : new GroupStats(count, kopecks / 100.0, min, max);
+        }
+    }
+
+    static class Accumulator {
+        private final MutableGroup total = new MutableGroup();
+        private final Map<String, MutableGroup> byType = new HashMap<>();
+        private final Map<String, MutableGroup> byStatus = new HashMap<>();
+        private final Map<String, MutableGroup> byModel = new HashMap<>();
+        private ServiceRecord mostExpensive;
+        private ServiceRecord cheapest;
+
+        void add(ServiceRecord record) {
+            double cost = record.getCost();
+            long kopecks = ServiceAggregates.toKopecks(cost);
+            total.add(cost, kopecks);
+            group(byType, record.getServiceType()).add(cost, kopecks);
+            group(byStatus, record.getStatus()).add(cost, kopecks);
+            group(byModel, record.getCarModel()).add(cost, kopecks);
+
+            // При равной стоимости остается первая запись, как у Stream.max/min
+            if (mostExpensive == null || cost > mostExpensive.getCost()) {
+                mostExpensive = record;
+            }
+            if (cheapest == null || cost < cheapest.getCost()) {
+                cheapest = record;
+            }
+        }
+
+        Accumulator merge(Accumulator other) {
+            total.merge(other.total);
+            mergeGroups(byType, other.byType);
+            mergeGroups(byStatus, other.byStatus);
+            mergeGroups(byModel, other.byModel);
+            if (other.mostExpensive != null
+                    && (mostExpensive == null || other.mostExpensive.getCost() > mostExpensive.getCost())) {
+                mostExpensive = other.mostExpensive;
+            }
+            if (other.cheapest != null
+                    && (cheapest == null || other.cheapest.getCost() < cheapest.getCost())) {
+                cheapest = other.cheapest;
+            }
+            return this;
+        }
+
+        private static MutableGroup group(Map<String, MutableGroup> groups, String key) {
+            MutableGroup group = groups.get(key);
+            if (group == null) {
+                group = new MutableGroup();
+                groups.put(key, group);
+            }
+            return group;
+        }
+
+        private static void mergeGroups(Map<String, MutableGroup> target, Map<String, MutableGroup> source) {
+            source.forEach((key, group) -> group(target, key).merge(group));
+        }
+    }
+}
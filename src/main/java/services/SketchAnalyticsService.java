@@ -0,0 +1,126 @@
+package services;
+
+import config.SketchSchema;
+import util.DatabaseUtil;
+import util.HyperLogLog;
+import util.QuantileSketch;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Приближенная аналитика по записям сервиса на дневных эскизах из таблицы analytics_sketches:
+ * количество различных клиентов и госномеров (HyperLogLog) и квантили стоимости по типам услуг.
+ * Эскизы за период объединяются в памяти, поэтому анализ многолетней истории
+ * занимает килобайты памяти независимо от числа записей.
+ *
+ * Эскизы поддерживает DataService через SketchSchema в той же транзакции, что и изменение записей;
+ * по существующей истории они заполняются миграцией схемы.
+ */
+public class SketchAnalyticsService {
+    private static final String GET_SKETCHES_SQL =
+            "SELECT dim_key, data FROM analytics_sketches WHERE day BETWEEN ? AND ? AND kind = ?";
+
+    /**
+     * Оценка количества различных клиентов (по телефону) за период, границы включительно
+     */
+    public long estimateDistinctClients(LocalDate startDate, LocalDate endDate) {
+        return mergeCounts(SketchSchema.KIND_CLIENTS, startDate, endDate);
+    }
+
+    /**
+     * Оценка количества различных госномеров за период, границы включительно
+     */
+    public long estimateDistinctLicensePlates(LocalDate startDate, LocalDate endDate) {
+        return mergeCounts(SketchSchema.KIND_PLATES, startDate, endDate);
+    }
+
+    /**
+     * Эскизы стоимости по типам услуг за период
+     */
+    public Map<String, QuantileSketch> getCostSketches(LocalDate startDate, LocalDate endDate) {
+        Map<String, QuantileSketch> result = new LinkedHashMap<>();
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = prepareRange(conn, SketchSchema.KIND_COST, startDate, endDate);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                QuantileSketch sketch = QuantileSketch.fromBytes(rs.getBytes("data"));
+                QuantileSketch total = result.get(rs.getString("dim_key"));
+                if (total == null) {
+                    result.put(rs.getString("dim_key"), sketch);
+                } else {
+                    total.merge(sketch);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * Квантили стоимости по типам услуг за период
+     * @param quantiles например 0.5, 0.9, 0.99
+     * @return для каждого типа услуги оценки квантилей в порядке аргументов
+     */
+    public Map<String, double[]> getCostPercentiles(LocalDate startDate, LocalDate endDate, double... quantiles) {
+        Map<String, double[]> result = new LinkedHashMap<>();
+        getCostSketches(startDate, endDate).forEach((type, sketch) -> {
+            double[] values = new double[quantiles.length];
+            for (int i = 0; i < quantiles.length; i++) {
+                values[i] = sketch.getQuantile(quantiles[i]);
+            }
+            result.put(type, values);
+        });
+        return result;
+    }
+
+    /**
+     * Перестраивает эскизы за период по записям сервиса (например, после загрузки данных в обход DataService)
+     * @param startDate начало периода; null - с начала истории
+     * @param endDate конец периода; null - до конца истории
+     */
+    public CompletableFuture<Void> rebuildSketches(LocalDate startDate, LocalDate endDate) {
+        LocalDate from = startDate == null ? SketchSchema.MIN_DAY : startDate;
+        LocalDate to = endDate == null ? SketchSchema.MAX_DAY : endDate;
+        return DatabaseUtil.write(conn -> {
+            SketchSchema.rebuild(conn, from, to);
+            return null;
+        });
+    }
+
+    private long mergeCounts(String kind, LocalDate startDate, LocalDate endDate) {
+        HyperLogLog total = new HyperLogLog();
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = prepareRange(conn, kind, startDate, endDate);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                total.merge(HyperLogLog.fromBytes(rs.getBytes("data")));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return total.estimate();
+    }
+
+    private static PreparedStatement prepareRange(Connection conn, String kind, LocalDate startDate,
+                                                  LocalDate endDate) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(GET_SKETCHES_SQL);
+        try {
+            stmt.setString(1, startDate.toString());
+            stmt.setString(2, endDate.toString());
+            stmt.setString(3, kind);
+            return stmt;
+        } catch (SQLException | RuntimeException e) {
+            stmt.close();
+            throw e;
+        }
+    }
+
+}
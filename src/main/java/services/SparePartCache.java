@@ -0,0 +1,191 @@
+package services;
+
+import models.SparePart;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Каталог запчастей в памяти с индексами по id и коду.
+ * Каталог загружается из базы один раз и обновляется при записи через DataService,
+ * поэтому обновление панелей не обращается к диску.
+ * Чтение идет без блокировок по неизменяемому снимку, запись заменяет снимок целиком
+ * (запчасти меняются несколько раз в день).
+ */
+public class SparePartCache {
+    private static final Comparator<SparePart> BY_NAME =
+            Comparator.comparing(SparePart::getName, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Supplier<List<SparePart>> loader;
+    private volatile Catalogue catalogue;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param loader загрузка всего каталога из базы данных
+     */
+    public SparePartCache(Supplier<List<SparePart>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Возвращает все запчасти, упорядоченные по названию
+     */
+    public List<SparePart> getAll() {
+        List<SparePart> sorted = catalogue().sorted;
+        List<SparePart> result = new ArrayList<>(sorted.size());
+        for (SparePart part : sorted) {
+            result.add(copy(part));
+        }
+        return result;
+    }
+
+    public Optional<SparePart> getById(int id) {
+        return Optional.ofNullable(catalogue().byId.get(id)).map(SparePartCache::copy);
+    }
+
+    public Optional<SparePart> getByCode(String code) {
+        return Optional.ofNullable(catalogue().byCode.get(code)).map(SparePartCache::copy);
+    }
+
+    /**
+     * Добавляет или заменяет запчасть после успешной записи в базу
+     */
+    public synchronized void put(SparePart part) {
+        Catalogue current = catalogue;
+        if (current == null) {
+            // Каталог еще не загружен: запчасть попадет в него при загрузке
+            return;
+        }
+        Map<Integer, SparePart> byId = new HashMap<>(current.byId);
+        SparePart previous = byId.put(part.getId(), copy(part));
+        Map<String, SparePart> byCode = new HashMap<>(current.byCode);
+        if (previous != null && previous.getCode() != null) {
+            byCode.remove(previous.getCode());
+        }
+        catalogue = new Catalogue(byId.values(), byCode);
+    }
+
+    /**
+     * Сбрасывает каталог; следующее чтение загрузит его из базы заново
+     */
+    public synchronized void invalidate() {
+        catalogue = null;
+    }
+
+    public Metrics getMetrics() {
+        Catalogue current = catalogue;
+        return new Metrics(hits.get(), misses.get(), current == null ? 0 : current.sorted.size());
+    }
+
+    private Catalogue catalogue() {
+        Catalogue current = catalogue;
+        if (current != null) {
+            hits.incrementAndGet();
+            return current;
+        }
+        synchronized (this) {
+            if (catalogue == null) {
+                misses.incrementAndGet();
+                catalogue = new Catalogue(loader.get(), new HashMap<>());
+            } else {
+                hits.incrementAndGet();
+            }
+            return catalogue;
+        }
+    }
+
+    private static SparePart copy(SparePart part) {
+        SparePart copy = new SparePart();
+        copy.setId(part.getId());
+        if (part.getName() != null) {
+            copy.setName(part.getName());
+        }
+        if (part.getCode() != null) {
+            copy.setCode(part.getCode());
+        }
+        copy.setDescription(part.getDescription());
+        copy.setCompatibleModels(part.getCompatibleModels());
+        copy.setQuantity(part.getQuantity());
+        copy.setPrice(part.getPrice());
+        copy.setSupplier(part.getSupplier());
+        copy.setMinQuantity(part.getMinQuantity());
+        if (part.getCreatedAt() != null) {
+            copy.setCreatedAt(part.getCreatedAt());
+        }
+        return copy;
+    }
+
+    // Неизменяемый снимок каталога
+    private static class Catalogue {
+        private final Map<Integer, SparePart> byId;
+        private final Map<String, SparePart> byCode;
+        private final List<SparePart> sorted;
+
+        Catalogue(Iterable<SparePart> parts, Map<String, SparePart> byCode) {
+            Map<Integer, SparePart> ids = new HashMap<>();
+            List<SparePart> list = new ArrayList<>();
+            for (SparePart part : parts) {
+                ids.put(part.getId(), part);
+                list.add(part);
+                if (part.getCode() != null) {
+                    byCode.put(part.getCode(), part);
+                }
+            }
+            list.sort(BY_NAME);
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byCode = Collections.unmodifiableMap(byCode);
+            this.sorted = Collections.unmodifiableList(list);
+        }
+    }
+
+    /**
+     * Снимок метрик кэша каталога
+     */
+    public static class Metrics {
+        private final long hits;
+        private final long misses;
+        private final int size;
+
+        Metrics(long hits, long misses, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : hits / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return "SparePartCache.Metrics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", size=" + size +
+                    ", hitRate=" + String.format("%.3f", getHitRate()) +
+                    '}';
+        }
+    }
+}
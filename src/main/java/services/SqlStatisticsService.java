@@ -0,0 +1,120 @@
+package services;
+
+import models.SparePart;
+import util.DatabaseUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика запчастей и расписания работ, вычисляемая в базе данных запросами GROUP BY:
+ * из базы передаются только строки групп. Показатели записей сервиса сюда не входят:
+ * итоги периода дает ServiceAggregates, выручку по типам услуг и механикам - RevenueRollupService.
+ */
+public class SqlStatisticsService {
+    private static final String LOW_STOCK_PARTS_SQL =
+            "SELECT * FROM spare_parts WHERE quantity < min_quantity ORDER BY quantity";
+
+    private static final String PARTS_BY_SUPPLIER_SQL =
+            "SELECT supplier, COUNT(*) AS cnt FROM spare_parts GROUP BY supplier ORDER BY supplier";
+
+    private static final String WORK_FILTER_SQL = " FROM work_schedules WHERE start_time >= ? AND start_time < ?";
+
+    // Статистика запчастей
+    public List<SparePart> findLowStockParts() {
+        List<SparePart> parts = new ArrayList<>();
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(LOW_STOCK_PARTS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                parts.add(DataService.mapSparePart(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return parts;
+    }
+
+    public Map<String, Long> countPartsBySupplier() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(PARTS_BY_SUPPLIER_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.put(rs.getString("supplier"), rs.getLong("cnt"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    // Статистика расписания работ
+    public Map<Integer, Long> countWorkByMechanic(LocalDate startDate, LocalDate endDate) {
+        Map<Integer, Long> result = new LinkedHashMap<>();
+        String sql = "SELECT mechanic_id, COUNT(*) AS cnt" + WORK_FILTER_SQL +
+                " GROUP BY mechanic_id ORDER BY mechanic_id";
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindWorkFilter(stmt, startDate, endDate);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getInt("mechanic_id"), rs.getLong("cnt"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    public Map<LocalDate, Long> countWorkByDate(LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, Long> result = new LinkedHashMap<>();
+        String sql = "SELECT " + DatabaseUtil.dayExpression("start_time") + " AS day, COUNT(*) AS cnt" +
+                WORK_FILTER_SQL + " GROUP BY day ORDER BY day";
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindWorkFilter(stmt, startDate, endDate);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(LocalDate.parse(rs.getString("day")), rs.getLong("cnt"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    public Map<String, Long> countWorkByStatus(LocalDate startDate, LocalDate endDate) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        String sql = "SELECT status, COUNT(*) AS cnt" + WORK_FILTER_SQL + " GROUP BY status ORDER BY status";
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindWorkFilter(stmt, startDate, endDate);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getString("status"), rs.getLong("cnt"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    // Конец периода включительно: граница - начало следующего дня
+    private static void bindWorkFilter(PreparedStatement stmt, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        stmt.setTimestamp(1, Timestamp.valueOf(startDate.atStartOfDay()));
+        stmt.setTimestamp(2, Timestamp.valueOf(endDate.plusDays(1).atStartOfDay()));
+    }
+}
@@ -7,49 +7,88 @@ import models.WorkSchedule;
 import java.time.LocalDate;
 import java.util.Comparator;
 import java.util.List;
+import java.util.LongSummaryStatistics;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Статистика по записям, запчастям и расписанию
+ */
 public class StatisticsService {
     // Анализ записей сервиса
+    // Методы одного показателя выполняют один коллектор; если нужно несколько показателей,
+    // summarize() собирает их все за один проход. Суммы считаются в копейках, как в summarize().
+    /**
+     * Собирает всю статистику по записям за один проход
+     */
+    public ServiceStatsSnapshot summarize(List<ServiceRecord> records) {
+        return summarize(records.stream());
+    }
+
+    public ServiceStatsSnapshot summarize(Stream<ServiceRecord> records) {
+        return records.collect(ServiceStatsSnapshot.collector());
+    }
+
     public Map<String, Long> countServicesByType(List<ServiceRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        ServiceRecord::getServiceType,
-                        Collectors.counting()
-                ));
+        return countServicesByType(records.stream());
+    }
+
+    public Map<String, Long> countServicesByType(Stream<ServiceRecord> records) {
+        return records.collect(Collectors.groupingBy(
+                ServiceRecord::getServiceType,
+                Collectors.counting()
+        ));
     }
 
     public Map<String, Long> countServicesByCarModel(List<ServiceRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        ServiceRecord::getCarModel,
-                        Collectors.counting()
-                ));
+        return countServicesByCarModel(records.stream());
+    }
+
+    public Map<String, Long> countServicesByCarModel(Stream<ServiceRecord> records) {
+        return records.collect(Collectors.groupingBy(
+                ServiceRecord::getCarModel,
+                Collectors.counting()
+        ));
     }
 
     public Map<String, Double> sumCostByServiceType(List<ServiceRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        ServiceRecord::getServiceType,
-                        Collectors.summingDouble(ServiceRecord::getCost)
-                ));
+        return sumCostByServiceType(records.stream());
+    }
+
+    public Map<String, Double> sumCostByServiceType(Stream<ServiceRecord> records) {
+        return records.collect(Collectors.groupingBy(
+                ServiceRecord::getServiceType,
+                Collectors.collectingAndThen(
+                        Collectors.summingLong(StatisticsService::kopecks),
+                        sum -> sum / 100.0
+                )
+        ));
     }
 
     public Map<String, Double> avgCostByServiceType(List<ServiceRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        ServiceRecord::getServiceType,
-                        Collectors.averagingDouble(ServiceRecord::getCost)
-                ));
+        return avgCostByServiceType(records.stream());
+    }
+
+    public Map<String, Double> avgCostByServiceType(Stream<ServiceRecord> records) {
+        return records.collect(Collectors.groupingBy(
+                ServiceRecord::getServiceType,
+                Collectors.collectingAndThen(
+                        Collectors.summarizingLong(StatisticsService::kopecks),
+                        stats -> stats.getSum() / 100.0 / stats.getCount()
+                )
+        ));
     }
 
     public Map<String, Long> countServicesByStatus(List<ServiceRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        ServiceRecord::getStatus,
-                        Collectors.counting()
-                ));
+        return countServicesByStatus(records.stream());
+    }
+
+    public Map<String, Long> countServicesByStatus(Stream<ServiceRecord> records) {
+        return records.collect(Collectors.groupingBy(
+                ServiceRecord::getStatus,
+                Collectors.counting()
+        ));
     }
 
     // Анализ запчастей
@@ -103,28 +142,44 @@ public class StatisticsService {
 
     // Комплексная статистика
     public ServiceRecord findMostExpensiveService(List<ServiceRecord> records) {
-        return records.stream()
+        return findMostExpensiveService(records.stream());
+    }
+
+    public ServiceRecord findMostExpensiveService(Stream<ServiceRecord> records) {
+        return records
                 .max(Comparator.comparingDouble(ServiceRecord::getCost))
                 .orElse(null);
     }
 
     public ServiceRecord findCheapestService(List<ServiceRecord> records) {
-        return records.stream()
+        return findCheapestService(records.stream());
+    }
+
+    public ServiceRecord findCheapestService(Stream<ServiceRecord> records) {
+        return records
                 .min(Comparator.comparingDouble(ServiceRecord::getCost))
                 .orElse(null);
     }
 
     public double calculateTotalRevenue(List<ServiceRecord> records) {
-        return records.stream()
-                .mapToDouble(ServiceRecord::getCost)
-                .sum();
+        return calculateTotalRevenue(records.stream());
+    }
+
+    public double calculateTotalRevenue(Stream<ServiceRecord> records) {
+        return records
+                .mapToLong(StatisticsService::kopecks)
+                .sum() / 100.0;
     }
 
     public double calculateAverageServiceCost(List<ServiceRecord> records) {
-        return records.stream()
-                .mapToDouble(ServiceRecord::getCost)
-                .average()
-                .orElse(0.0);
+        return calculateAverageServiceCost(records.stream());
+    }
+
+    public double calculateAverageServiceCost(Stream<ServiceRecord> records) {
+        LongSummaryStatistics stats = records
+                .mapToLong(StatisticsService::kopecks)
+                .summaryStatistics();
+        return stats.getCount() == 0 ? 0.0 : stats.getSum() / 100.0 / stats.getCount();
     }
 
     public Map<String, Double> calculateServiceTypePercentage(List<ServiceRecord> records) {
@@ -138,4 +193,8 @@ public class StatisticsService {
                         )
                 ));
     }
-}
\ No newline at end of file
+
+    private static long kopecks(ServiceRecord record) {
+        return ServiceAggregates.toKopecks(record.getCost());
+    }
+}
@@ -1,7 +1,9 @@
 package services;
 
+import models.Page;
 import models.User;
 import util.DatabaseUtil;
+import util.PageToken;
 import util.PasswordUtil;
 import util.Validator;
 
@@ -19,6 +21,12 @@ public class UserService {
     private static final String FIND_BY_USERNAME_SQL = "SELECT * FROM users WHERE username = ?";
     private static final String FIND_ALL_SQL = "SELECT * FROM users ORDER BY full_name";
     private static final String SEARCH_SQL = "SELECT * FROM users WHERE username LIKE ? OR full_name LIKE ? ORDER BY full_name";
+    // Keyset-пагинация по (full_name, id)
+    private static final String FIND_PAGE_SQL =
+            "SELECT * FROM users WHERE (full_name, id) > (?, ?) ORDER BY full_name, id LIMIT ?";
+    private static final String SEARCH_PAGE_SQL =
+            "SELECT * FROM users WHERE (username LIKE ? OR full_name LIKE ?) AND (full_name, id) > (?, ?) " +
+                    "ORDER BY full_name, id LIMIT ?";
     private static final String INSERT_SQL =
             "INSERT INTO users (username, password, full_name, phone, role) VALUES (?, ?, ?, ?, ?)";
     private static final String UPDATE_SQL =
@@ -104,6 +112,65 @@ public class UserService {
         return users;
     }
 
+    /**
+     * Возвращает страницу пользователей, упорядоченных по ФИО
+     * @param pageToken токен из предыдущей страницы или null для первой страницы
+     * @param pageSize размер страницы
+     */
+    public Page<User> findPage(String pageToken, int pageSize) {
+        return queryPage(FIND_PAGE_SQL, null, pageToken, pageSize);
+    }
+
+    /**
+     * Возвращает страницу пользователей, найденных по логину или ФИО
+     */
+    public Page<User> searchPage(String query, String pageToken, int pageSize) {
+        if (query == null || query.trim().isEmpty()) {
+            return findPage(pageToken, pageSize);
+        }
+        return queryPage(SEARCH_PAGE_SQL, "%" + query.trim() + "%", pageToken, pageSize);
+    }
+
+    private Page<User> queryPage(String sql, String searchTerm, String pageToken, int pageSize) {
+        List<User> users = new ArrayList<>();
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            if (searchTerm != null) {
+                stmt.setString(index++, searchTerm);
+                stmt.setString(index++, searchTerm);
+            }
+            if (pageToken != null) {
+                String[] key = PageToken.decode(pageToken, 2);
+                stmt.setString(index++, key[0]);
+                stmt.setInt(index++, Integer.parseInt(key[1]));
+            } else {
+                // Первая страница: ключ меньше любого значения
+                stmt.setString(index++, "");
+                stmt.setInt(index++, Integer.MIN_VALUE);
+            }
+            // Одна лишняя строка показывает, есть ли следующая страница
+            stmt.setInt(index, pageSize + 1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(mapUser(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Ошибка при получении страницы пользователей", e);
+            return new Page<>(new ArrayList<>(), null);
+        }
+
+        if (users.size() <= pageSize) {
+            return new Page<>(users, null);
+        }
+        List<User> items = new ArrayList<>(users.subList(0, pageSize));
+        User last = items.get(items.size() - 1);
+        return new Page<>(items, PageToken.encode(last.getFullName(), String.valueOf(last.getId())));
+    }
+
     public boolean create(User user) {
         if (user == null || !validateUser(user)) {
             return false;
@@ -0,0 +1,174 @@
+package services;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Выгрузка в Excel через SXSSF: в памяти держится окно из ROW_WINDOW строк,
+ * остальные сбрасываются во временный файл. Стили создаются один раз на книгу.
+ * Ширина столбцов считается по первым WIDTH_SAMPLE_ROWS строкам вместо autoSizeColumn,
+ * который перемеряет каждую ячейку столбца.
+ */
+public class XlsxExportSink<T> implements ExportSink<T> {
+    private static final int ROW_WINDOW = 100;
+    private static final int WIDTH_SAMPLE_ROWS = 500;
+    // Excel не допускает столбцы шире 255 символов
+    private static final int MAX_COLUMN_WIDTH_CHARS = 255;
+
+    private final String filePath;
+    private final String sheetName;
+    private final SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+    private final List<T> sample = new ArrayList<>(WIDTH_SAMPLE_ROWS);
+
+    private List<ExportColumn<T>> columns;
+    private Sheet sheet;
+    private CellStyle dateStyle;
+    private CellStyle dateTimeStyle;
+    private CellStyle currencyStyle;
+    private boolean widthsSet;
+    private int rowNum = 1;
+
+    public XlsxExportSink(String filePath, String sheetName) {
+        this.filePath = filePath;
+        this.sheetName = sheetName;
+        workbook.setCompressTempFiles(true);
+    }
+
+    @Override
+    public void begin(List<ExportColumn<T>> columns) {
+        this.columns = columns;
+        sheet = workbook.createSheet(sheetName);
+
+        // Стили для ячеек
+        CellStyle headerStyle = createHeaderStyle();
+        dateStyle = createFormatStyle("dd.mm.yyyy");
+        dateTimeStyle = createFormatStyle("dd.mm.yyyy hh:mm");
+        currencyStyle = createFormatStyle("#,##0.00\" руб.\"");
+
+        // Создание заголовков
+        Row headerRow = sheet.createRow(0);
+        for (int i = 0; i < columns.size(); i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(columns.get(i).getTitle());
+            cell.setCellStyle(headerStyle);
+        }
+    }
+
+    @Override
+    public void write(T row) {
+        if (!widthsSet) {
+            // Первые строки копятся для расчета ширины столбцов
+            sample.add(row);
+            if (sample.size() < WIDTH_SAMPLE_ROWS) {
+                return;
+            }
+            flushSample();
+            return;
+        }
+        writeRow(row);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (!widthsSet) {
+            flushSample();
+        }
+        try (OutputStream outputStream = new FileOutputStream(filePath)) {
+            workbook.write(outputStream);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Удаление временных файлов SXSSF
+        workbook.dispose();
+        workbook.close();
+    }
+
+    private void flushSample() {
+        setColumnWidths();
+        widthsSet = true;
+        for (T row : sample) {
+            writeRow(row);
+        }
+        sample.clear();
+    }
+
+    private void writeRow(T row) {
+        Row sheetRow = sheet.createRow(rowNum++);
+        for (int i = 0; i < columns.size(); i++) {
+            ExportColumn<T> column = columns.get(i);
+            Object value = column.value(row);
+            Cell cell = sheetRow.createCell(i);
+            if (value == null) {
+                continue;
+            }
+            switch (column.getType()) {
+                case INTEGER:
+                    cell.setCellValue(((Number) value).doubleValue());
+                    break;
+                case MONEY:
+                    cell.setCellValue(((Number) value).doubleValue());
+                    cell.setCellStyle(currencyStyle);
+                    break;
+                case DATE:
+                    cell.setCellValue((LocalDate) value);
+                    cell.setCellStyle(dateStyle);
+                    break;
+                case DATETIME:
+                    cell.setCellValue((LocalDateTime) value);
+                    cell.setCellStyle(dateTimeStyle);
+                    break;
+                default:
+                    cell.setCellValue(value.toString());
+            }
+        }
+    }
+
+    // Ширина столбца - самый длинный текст среди заголовка и выборки строк, в единицах 1/256 символа
+    private void setColumnWidths() {
+        for (int i = 0; i < columns.size(); i++) {
+            ExportColumn<T> column = columns.get(i);
+            int width = column.getTitle().length();
+            for (T row : sample) {
+                width = Math.max(width, column.format(row).length());
+            }
+            sheet.setColumnWidth(i, Math.min(width + 2, MAX_COLUMN_WIDTH_CHARS) * 256);
+        }
+    }
+
+    private CellStyle createHeaderStyle() {
+        CellStyle style = workbook.createCellStyle();
+        Font font = workbook.createFont();
+        font.setBold(true);
+        style.setFont(font);
+        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        style.setBorderBottom(BorderStyle.THIN);
+        style.setBorderTop(BorderStyle.THIN);
+        style.setBorderLeft(BorderStyle.THIN);
+        style.setBorderRight(BorderStyle.THIN);
+        return style;
+    }
+
+    private CellStyle createFormatStyle(String format) {
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat(format));
+        return style;
+    }
+}
@@ -155,7 +155,7 @@ public class YooKassaPaymentService implements PaymentService {
 
     private void savePaymentToDatabase(Payment payment, int recordId) {
         try {
-            dataService.savePayment(payment);
+            dataService.savePayment(payment).join();
             logger.info("Платеж " + payment.getPaymentId() + " сохранен в базу данных");
         } catch (Exception e) {
             logError("Ошибка сохранения платежа в базу данных", e);
@@ -0,0 +1,314 @@
+package util;
+
+import config.AppConfig;
+import javafx.concurrent.Task;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Общий исполнитель фоновых задач приложения.
+ * Запросы к базе, экспорт и резервное копирование выполняются в пуле потоков, а не в потоке JavaFX,
+ * поэтому интерфейс не замирает на больших данных. Обработчики результата и ошибки вызываются
+ * в потоке JavaFX: Task передает им управление через Platform.runLater.
+ *
+ * Задачи с одинаковым ключом объединяются. Повторный запрос, пока задача выполняется,
+ * присоединяется к ней (submit) или отменяет ее и запускает новую (submitLatest);
+ * результат отмененной задачи обработчикам не передается.
+ */
+public class BackgroundExecutor {
+    private static final Logger logger = Logger.getLogger(BackgroundExecutor.class.getName());
+
+    private static volatile BackgroundExecutor instance;
+
+    // Сколько ждать завершения прерванных задач при остановке
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Работа, выполняемая в фоновом потоке
+     * @param <T> тип результата
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T call(Progress progress) throws Exception;
+    }
+
+    /**
+     * Прогресс задачи; долгая работа должна проверять isCancelled и завершаться досрочно
+     */
+    public interface Progress {
+        void update(long done, long total);
+
+        void message(String message);
+
+        boolean isCancelled();
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, BackgroundTask<?>> active = new ConcurrentHashMap<>();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong finishedCount = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    public BackgroundExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "background-task-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Общий исполнитель; создается при первом обращении
+     */
+    public static BackgroundExecutor getInstance() {
+        BackgroundExecutor current = instance;
+        if (current == null) {
+            synchronized (BackgroundExecutor.class) {
+                current = instance;
+                if (current == null) {
+                    current = new BackgroundExecutor(AppConfig.getBackgroundThreads());
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Отменяет задачи общего исполнителя и ждет остановки его потоков
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Запускает задачу; если задача с таким ключом еще выполняется, новая не создается
+     * и возвращается уже запущенная (повторное нажатие кнопки экспорта, копирования и т.п.)
+     * @param key ключ операции
+     * @param work работа в фоновом потоке
+     * @param onSuccess обработчик результата в потоке JavaFX
+     * @param onFailure обработчик ошибки в потоке JavaFX
+     */
+    public synchronized <T> Task<T> submit(String key, Work<T> work, Consumer<T> onSuccess,
+                                           Consumer<Throwable> onFailure) {
+        BackgroundTask<?> running = active.get(key);
+        if (running != null && !running.isDone()) {
+            coalescedCount.incrementAndGet();
+            @SuppressWarnings("unchecked")
+            Task<T> existing = (Task<T>) running;
+            return existing;
+        }
+        return start(key, work, onSuccess, onFailure);
+    }
+
+    /**
+     * Запускает задачу, отменяя выполняющуюся задачу с тем же ключом
+     * (загрузка данных по новому фильтру делает результат предыдущей ненужным)
+     */
+    public synchronized <T> Task<T> submitLatest(String key, Work<T> work, Consumer<T> onSuccess,
+                                                 Consumer<Throwable> onFailure) {
+        BackgroundTask<?> running = active.get(key);
+        if (running != null && !running.isDone()) {
+            coalescedCount.incrementAndGet();
+            running.cancel();
+        }
+        return start(key, work, onSuccess, onFailure);
+    }
+
+    /**
+     * Отменяет задачу с ключом, если она выполняется
+     */
+    public synchronized void cancel(String key) {
+        BackgroundTask<?> running = active.remove(key);
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    /**
+     * Количество задач, ожидающих свободного потока
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Количество запросов, объединенных с уже выполняющейся задачей
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    /**
+     * Среднее время от постановки задачи в очередь до начала выполнения
+     */
+    public double getAverageWaitMillis() {
+        long started = startedCount.get();
+        return started == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / started;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Среднее время выполнения задачи в фоновом потоке
+     */
+    public double getAverageRunMillis() {
+        long finished = finishedCount.get();
+        return finished == 0 ? 0 : totalRunNanos.get() / 1_000_000.0 / finished;
+    }
+
+    public double getMaxRunMillis() {
+        return maxRunNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Отменяет все задачи и ждет остановки потоков не дольше SHUTDOWN_TIMEOUT_SECONDS,
+     * чтобы база данных закрывалась после того, как задачи перестали к ней обращаться
+     */
+    public void close() {
+        synchronized (this) {
+            active.values().forEach(BackgroundTask::cancel);
+            active.clear();
+            executor.shutdownNow();
+        }
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warning("Фоновые задачи не завершились за " + SHUTDOWN_TIMEOUT_SECONDS + " с, активных: "
+                        + executor.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> Task<T> start(String key, Work<T> work, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        BackgroundTask<T> task = new BackgroundTask<>(key, work);
+        task.setOnSucceeded(event -> onSuccess.accept(task.getValue()));
+        task.setOnFailed(event -> {
+            Throwable error = task.getException();
+            logger.log(Level.SEVERE, "Ошибка фоновой задачи " + key, error);
+            onFailure.accept(error);
+        });
+        active.put(key, task);
+        submittedCount.incrementAndGet();
+        executor.execute(task);
+        return task;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Повтор, если максимум обновил другой поток
+        }
+    }
+
+    /**
+     * Задача JavaFX, выполняющая Work и собирающая метрики
+     */
+    private class BackgroundTask<T> extends Task<T> implements Progress {
+        private final String key;
+        private final Work<T> work;
+        private final long submittedAt = System.nanoTime();
+
+        BackgroundTask(String key, Work<T> work) {
+            this.key = key;
+            this.work = work;
+        }
+
+        @Override
+        protected T call() throws Exception {
+            long startedAt = System.nanoTime();
+            long wait = startedAt - submittedAt;
+            startedCount.incrementAndGet();
+            totalWaitNanos.addAndGet(wait);
+            updateMax(maxWaitNanos, wait);
+            try {
+                return work.call(this);
+            } finally {
+                long run = System.nanoTime() - startedAt;
+                finishedCount.incrementAndGet();
+                totalRunNanos.addAndGet(run);
+                updateMax(maxRunNanos, run);
+                logger.fine(String.format("Задача %s: ожидание %d мс, выполнение %d мс, в очереди %d",
+                        key, TimeUnit.NANOSECONDS.toMillis(wait), TimeUnit.NANOSECONDS.toMillis(run),
+                        getQueueDepth()));
+            }
+        }
+
+        @Override
+        public void update(long done, long total) {
+            updateProgress(done, total);
+        }
+
+        @Override
+        public void message(String message) {
+            updateMessage(message);
+        }
+
+        @Override
+        protected void succeeded() {
+            completedCount.incrementAndGet();
+            active.remove(key, this);
+        }
+
+        @Override
+        protected void failed() {
+            failedCount.incrementAndGet();
+            active.remove(key, this);
+        }
+
+        @Override
+        protected void cancelled() {
+            cancelledCount.incrementAndGet();
+            active.remove(key, this);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Построчное чтение CSV в формате CsvWriter.
+ * Поля в кавычках могут содержать запятые, переводы строк и удвоенные кавычки.
+ * Пустое поле без кавычек читается как null, поле в кавычках - как строка (возможно пустая);
+ * было ли поле в кавычках, сообщает isQuoted. Поля собираются в переиспользуемый
+ * StringBuilder, файл читается блоками, поэтому память не зависит от размера файла.
+ */
+public class CsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final StringBuilder field = new StringBuilder(64);
+    private final List<String> fields = new ArrayList<>();
+    private boolean[] quoted = new boolean[16];
+    private long lineNumber;
+
+    public CsvReader(Path path) throws IOException {
+        this(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Читает следующую строку
+     * @return поля строки или null в конце файла
+     */
+    public String[] readRow() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        lineNumber++;
+        fields.clear();
+        while (true) {
+            boolean fieldQuoted = false;
+            field.setLength(0);
+            if (c == '"') {
+                fieldQuoted = true;
+                c = readQuoted();
+            }
+            // Символы после закрывающей кавычки до разделителя добавляются к полю как есть
+            while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                field.append((char) c);
+                c = read();
+            }
+            addField(fieldQuoted);
+
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r') {
+                c = read();
+                if (c != '\n' && c >= 0) {
+                    position--;
+                }
+            }
+            return fields.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Было ли поле прочитанной строки в кавычках
+     */
+    public boolean isQuoted(int index) {
+        return quoted[index];
+    }
+
+    /**
+     * Номер последней прочитанной строки файла, начиная с 1 (строка с переводами внутри кавычек считается одной)
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Читает поле в кавычках после открывающей кавычки; возвращает символ после закрывающей
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Незакрытая кавычка в строке " + lineNumber);
+            }
+            if (c == '"') {
+                c = read();
+                if (c != '"') {
+                    return c;
+                }
+            }
+            field.append((char) c);
+        }
+    }
+
+    private void addField(boolean fieldQuoted) {
+        int index = fields.size();
+        if (index == quoted.length) {
+            quoted = Arrays.copyOf(quoted, index * 2);
+        }
+        quoted[index] = fieldQuoted;
+        fields.add(fieldQuoted || field.length() > 0 ? field.toString() : null);
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
@@ -0,0 +1,123 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Построчная запись CSV с постоянным расходом памяти.
+ * Поля строки экранируются в переиспользуемый StringBuilder, готовая строка копируется
+ * в переиспользуемый буфер символов и уходит в буферизованный поток, поэтому на строку
+ * не создается ни промежуточных строк, ни списков. Текст пишется в кавычках с удвоением
+ * кавычек внутри, null - пустым полем.
+ */
+public class CsvWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] chars = new char[256];
+    private boolean firstField = true;
+
+    public CsvWriter(Path path) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8),
+                BUFFER_SIZE));
+    }
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Текстовое поле в кавычках
+     */
+    public CsvWriter quoted(String value) {
+        separate();
+        if (value == null) {
+            return this;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+        return this;
+    }
+
+    /**
+     * Поле без кавычек: заголовки, числа и даты, в которых не бывает запятых и кавычек
+     */
+    public CsvWriter value(String value) {
+        separate();
+        if (value != null) {
+            line.append(value);
+        }
+        return this;
+    }
+
+    public CsvWriter value(long value) {
+        separate();
+        line.append(value);
+        return this;
+    }
+
+    public CsvWriter value(double value) {
+        separate();
+        line.append(value);
+        return this;
+    }
+
+    /**
+     * Завершает строку и передает ее в поток
+     */
+    public void endRow() throws IOException {
+        line.append(LINE_SEPARATOR);
+        int length = line.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        line.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+        line.setLength(0);
+        firstField = true;
+    }
+
+    /**
+     * Строка из полей без кавычек, например заголовков
+     */
+    public void writeRow(String... values) throws IOException {
+        for (String value : values) {
+            value(value);
+        }
+        endRow();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void separate() {
+        if (firstField) {
+            firstField = false;
+        } else {
+            line.append(',');
+        }
+    }
+}
@@ -1,15 +1,44 @@
 package util;
 
 import config.DatabaseConfig;
+import config.DatabaseWriter;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public class DatabaseUtil {
+    /**
+     * Выдает соединение из общего пула; close() возвращает его в пул
+     */
     public static Connection getConnection() throws SQLException {
         return DatabaseConfig.getConnection();
     }
 
+    /**
+     * Выдает соединение только для чтения из пула читателей
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return DatabaseConfig.getReadConnection();
+    }
+
+    /**
+     * Ставит операцию записи в очередь единственного писателя
+     * @return future с результатом операции
+     */
+    public static <T> CompletableFuture<T> write(DatabaseWriter.WriteTask<T> task) {
+        return DatabaseConfig.getWriter().submit(task);
+    }
+
+    /**
+     * SQL-выражение дня (YYYY-MM-DD) для столбца даты.
+     * Драйвер сохраняет значения setDate/setTimestamp как миллисекунды от эпохи,
+     * день вычисляется в локальном часовом поясе, как LocalDate на стороне Java.
+     */
+    public static String dayExpression(String column) {
+        return "date(" + column + " / 1000, 'unixepoch', 'localtime')";
+    }
+
     public static void closeQuietly(AutoCloseable... closeables) {
         for (AutoCloseable c : closeables) {
             if (c != null) {
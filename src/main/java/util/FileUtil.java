@@ -5,99 +5,90 @@ import models.SparePart;
 import models.WorkSchedule;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
-import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 public class FileUtil {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
 
+    // Заголовки CSV; по ним же CsvImportService находит столбцы при загрузке.
+    // ID записи сохраняется, чтобы столбец «Запись» расписания ссылался на те же записи после загрузки
+    public static final List<String> RECORD_HEADER = List.of(
+            "ID", "Дата", "Клиент", "Телефон", "Услуга", "Модель", "Госномер", "Стоимость", "Статус", "Механик", "Примечания");
+    public static final List<String> PART_HEADER = List.of(
+            "Название", "Код", "Совместимость", "Количество", "Цена", "Поставщик", "Минимальный запас");
+    public static final List<String> SCHEDULE_HEADER = List.of(
+            "Механик", "Запись", "Начало", "Конец", "Статус", "Примечания");
+
     // Сохранение данных в CSV
     public static void saveRecordsToCsv(List<ServiceRecord> records, String filePath) throws IOException {
-        List<String> lines = records.stream()
-                .map(record -> String.join(",",
-                        record.getDate().format(DATE_FORMATTER),
-                        escapeCsv(record.getClientName()),
-                        escapeCsv(record.getClientPhone()),
-                        escapeCsv(record.getServiceType()),
-                        escapeCsv(record.getCarModel()),
-                        escapeCsv(record.getLicensePlate()),
-                        String.valueOf(record.getCost()),
-                        escapeCsv(record.getStatus()),
-                        String.valueOf(record.getAssignedMechanicId()),
-                        escapeCsv(record.getNotes())
-                ))
-                .collect(Collectors.toList());
-
-        // Добавляем заголовки
-        lines.add(0, "Дата,Клиент,Телефон,Услуга,Модель,Госномер,Стоимость,Статус,Механик,Примечания");
-
-        Path path = Paths.get(filePath);
-        Files.write(path, lines);
+        saveRecordsToCsv(records.stream(), filePath);
     }
 
     public static void savePartsToCsv(List<SparePart> parts, String filePath) throws IOException {
-        List<String> lines = parts.stream()
-                .map(part -> String.join(",",
-                        escapeCsv(part.getName()),
-                        escapeCsv(part.getCode()),
-                        escapeCsv(part.getCompatibleModels()),
-                        String.valueOf(part.getQuantity()),
-                        String.valueOf(part.getPrice()),
-                        escapeCsv(part.getSupplier()),
-                        String.valueOf(part.getMinQuantity())
-                ))
-                .collect(Collectors.toList());
-
-        lines.add(0, "Название,Код,Совместимость,Количество,Цена,Поставщик,Минимальный запас");
-
-        Path path = Paths.get(filePath);
-        Files.write(path, lines);
+        savePartsToCsv(parts.stream(), filePath);
     }
 
     public static void saveScheduleToCsv(List<WorkSchedule> schedule, String filePath) throws IOException {
-        List<String> lines = schedule.stream()
-                .map(ws -> String.join(",",
-                        String.valueOf(ws.getMechanicId()),
-                        String.valueOf(ws.getRecordId()),
-                        ws.getStartTime().format(DATETIME_FORMATTER),
-                        ws.getEndTime().format(DATETIME_FORMATTER),
-                        escapeCsv(ws.getStatus()),
-                        escapeCsv(ws.getNotes())
-                ))
-                .collect(Collectors.toList());
-
-        lines.add(0, "Механик,Запись,Начало,Конец,Статус,Примечания");
-
-        Path path = Paths.get(filePath);
-        Files.write(path, lines);
+        saveScheduleToCsv(schedule.stream(), filePath);
     }
 
-    // Создание резервных копий
-    public static void createBackup(List<ServiceRecord> records, List<SparePart> parts,
-                                    List<WorkSchedule> schedule, String backupDir) throws IOException {
-        LocalDate today = LocalDate.now();
-        String dateStr = today.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+    // Потоковое сохранение в CSV: строки пишутся по мере чтения, весь набор в памяти не хранится
+    public static void saveRecordsToCsv(Stream<ServiceRecord> records, String filePath) throws IOException {
+        writeCsv(records, RECORD_HEADER, (csv, record) -> csv
+                .value(record.getId())
+                .value(record.getDate().format(DATE_FORMATTER))
+                .quoted(record.getClientName())
+                .quoted(record.getClientPhone())
+                .quoted(record.getServiceType())
+                .quoted(record.getCarModel())
+                .quoted(record.getLicensePlate())
+                .value(record.getCost())
+                .quoted(record.getStatus())
+                .value(record.getAssignedMechanicId())
+                .quoted(record.getNotes()), filePath);
+    }
 
-        Path dirPath = Paths.get(backupDir);
-        if (!Files.exists(dirPath)) {
-            Files.createDirectories(dirPath);
-        }
+    public static void savePartsToCsv(Stream<SparePart> parts, String filePath) throws IOException {
+        writeCsv(parts, PART_HEADER, (csv, part) -> csv
+                .quoted(part.getName())
+                .quoted(part.getCode())
+                .quoted(part.getCompatibleModels())
+                .value(part.getQuantity())
+                .value(part.getPrice())
+                .quoted(part.getSupplier())
+                .value(part.getMinQuantity()), filePath);
+    }
 
-        saveRecordsToCsv(records, backupDir + "/records_" + dateStr + ".csv");
-        savePartsToCsv(parts, backupDir + "/parts_" + dateStr + ".csv");
-        saveScheduleToCsv(schedule, backupDir + "/schedule_" + dateStr + ".csv");
+    public static void saveScheduleToCsv(Stream<WorkSchedule> schedule, String filePath) throws IOException {
+        writeCsv(schedule, SCHEDULE_HEADER, (csv, ws) -> csv
+                .value(ws.getMechanicId())
+                .value(ws.getRecordId())
+                .value(ws.getStartTime().format(DATETIME_FORMATTER))
+                .value(ws.getEndTime().format(DATETIME_FORMATTER))
+                .quoted(ws.getStatus())
+                .quoted(ws.getNotes()), filePath);
     }
 
-    private static String escapeCsv(String value) {
-        if (value == null) {
-            return "";
+    private static <T> void writeCsv(Stream<T> rows, List<String> header, BiConsumer<CsvWriter, T> formatter,
+                                     String filePath) throws IOException {
+        try (CsvWriter csv = new CsvWriter(Paths.get(filePath))) {
+            csv.writeRow(header.toArray(new String[0]));
+            rows.forEach(row -> {
+                formatter.accept(csv, row);
+                try {
+                    csv.endRow();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return "\"" + value.replace("\"", "\"\"") + "\"";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Кодирование ключа последней строки страницы в непрозрачный токен продолжения
+ */
+public class PageToken {
+    private static final String SEPARATOR = "\u001F";
+
+    public static String encode(String... keyParts) {
+        String joined = String.join(SEPARATOR, keyParts);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает токен
+     * @param token токен, полученный от encode
+     * @param expectedParts ожидаемое количество частей ключа
+     * @throws IllegalArgumentException если токен поврежден
+     */
+    public static String[] decode(String token, int expectedParts) {
+        try {
+            String joined = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = joined.split(SEPARATOR, -1);
+            if (parts.length != expectedParts) {
+                throw new IllegalArgumentException("Неверный токен страницы");
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверный токен страницы", e);
+        }
+    }
+}
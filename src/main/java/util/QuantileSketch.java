@@ -0,0 +1,143 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Приближенные квантили с гарантированной относительной ошибкой (логарифмические бакеты, как в DDSketch).
+ * Значение x попадает в бакет ceil(log(x) / log(gamma)), где gamma = (1 + a) / (1 - a),
+ * поэтому любой квантиль оценивается с относительной ошибкой не более a.
+ * Для стоимостей от 1 до 10^7 руб. при a = 1% это не более ~800 бакетов;
+ * эскизы объединяются сложением счетчиков бакетов.
+ */
+public class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    // Значения меньше этого порога считаются нулевыми
+    private static final double MIN_INDEXABLE_VALUE = 1e-2;
+
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private final TreeMap<Integer, Long> buckets = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Относительная точность должна быть в интервале (0, 1)");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    }
+
+    /**
+     * Добавляет неотрицательное значение
+     */
+    public void add(double value) {
+        if (value < 0 || Double.isNaN(value)) {
+            throw new IllegalArgumentException("Значение должно быть неотрицательным");
+        }
+        if (value < MIN_INDEXABLE_VALUE) {
+            zeroCount++;
+        } else {
+            buckets.merge((int) Math.ceil(Math.log(value) / logGamma), 1L, Long::sum);
+        }
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Нельзя объединить эскизы разной точности");
+        }
+        other.buckets.forEach((index, bucketCount) -> buckets.merge(index, bucketCount, Long::sum));
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Оценка квантиля
+     * @param quantile от 0 до 1, например 0.5, 0.9, 0.99
+     * @return оценка значения или NaN для пустого эскиза
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Квантиль должен быть от 0 до 1");
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+        if (rank < zeroCount) {
+            // Все значения ниже порога неразличимы; наименьшее из них известно точно
+            return min;
+        }
+        long seen = zeroCount;
+        for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            seen += bucket.getValue();
+            if (seen > rank) {
+                // Середина бакета в смысле относительной ошибки; края ограничены точными min/max
+                double value = 2 * Math.exp(bucket.getKey() * logGamma) / (1 + Math.exp(logGamma));
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Сериализует эскиз: точность, количество, min/max, нулевой счетчик и непустые бакеты
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + buckets.size() * 12);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeDouble(relativeAccuracy);
+            out.writeLong(count);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            out.writeLong(zeroCount);
+            out.writeInt(buckets.size());
+            for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+                out.writeInt(bucket.getKey());
+                out.writeLong(bucket.getValue());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static QuantileSketch fromBytes(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            QuantileSketch sketch = new QuantileSketch(in.readDouble());
+            sketch.count = in.readLong();
+            sketch.min = in.readDouble();
+            sketch.max = in.readDouble();
+            sketch.zeroCount = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                sketch.buckets.put(in.readInt(), in.readLong());
+            }
+            return sketch;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Поврежденный эскиз квантилей", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Ленивый поток строк ResultSet.
+ * Строки преобразуются в объекты по мере чтения, поэтому в памяти не накапливается вся выборка.
+ * Соединение, запрос и ResultSet закрываются при закрытии потока или по исчерпании строк,
+ * поэтому поток нужно использовать в try-with-resources.
+ */
+public class ResultSetStream {
+    /**
+     * Преобразование текущей строки ResultSet в объект
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Выполняет подготовленный запрос и возвращает поток его строк
+     * @param conn соединение; закрывается вместе с потоком
+     * @param stmt запрос с установленными параметрами; закрывается вместе с потоком
+     * @param fetchSize сколько строк драйвер читает за один раз
+     * @param mapper преобразование строки в объект
+     */
+    public static <T> Stream<T> of(Connection conn, PreparedStatement stmt, int fetchSize,
+                                   RowMapper<T> mapper) throws SQLException {
+        ResultSet rs;
+        try {
+            stmt.setFetchSize(fetchSize);
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            DatabaseUtil.closeQuietly(stmt, conn);
+            throw e;
+        }
+
+        Runnable close = () -> DatabaseUtil.closeQuietly(rs, stmt, conn);
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean exhausted;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (exhausted) {
+                    return false;
+                }
+                try {
+                    if (!rs.next()) {
+                        exhausted = true;
+                        // Соединение возвращается в пул сразу после последней строки
+                        close.run();
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    exhausted = true;
+                    close.run();
+                    throw new RuntimeException("Ошибка чтения строки из базы данных", e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false).onClose(close);
+    }
+}
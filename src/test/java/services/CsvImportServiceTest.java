@@ -0,0 +1,87 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import util.FileUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Деление файла на части: перевод строки внутри кавычек не должен становиться границей части
+ */
+class CsvImportServiceTest {
+    // Столбец «Примечания» заголовка расписания
+    private static final int NOTES = 5;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsQuotedLineBreaksInsideOneRowAcrossChunks() throws IOException {
+        StringBuilder csv = new StringBuilder(String.join(",", FileUtil.SCHEDULE_HEADER)).append('\n');
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // Часть в 16 байт заканчивается в середине почти каждого примечания
+            String notes = "строка " + i + "\nпродолжение, \"" + i + "\"\r\nконец";
+            expected.add(notes);
+            csv.append("1,").append(i).append(",01.02.2024 10:00,01.02.2024 11:00,\"Новая\",\"")
+                    .append(notes.replace("\"", "\"\"")).append("\"\n");
+        }
+        Path file = write(csv.toString());
+
+        List<String> notes = new ArrayList<>();
+        List<Long> indexes = new ArrayList<>();
+        ImportResult result = new CsvImportService(null, 3, 16).importFile(file, FileUtil.SCHEDULE_HEADER,
+                (fields, columns) -> fields[columns[NOTES]], (rows, importResult, listener) -> {
+                    rows.forEach(row -> {
+                        indexes.add(row.index);
+                        notes.add(row.value);
+                    });
+                    return importResult;
+                }, null);
+
+        assertEquals(0, result.getErrors().size());
+        assertEquals(expected, notes);
+        for (int i = 0; i < indexes.size(); i++) {
+            assertEquals(i, indexes.get(i).longValue());
+        }
+    }
+
+    @Test
+    void reportsParseErrorsByFileRow() throws IOException {
+        StringBuilder csv = new StringBuilder(String.join(",", FileUtil.SCHEDULE_HEADER)).append('\n');
+        for (int i = 0; i < 50; i++) {
+            if (i == 37) {
+                csv.append("1,2\n");
+            } else {
+                csv.append("1,").append(i).append(",01.02.2024 10:00,01.02.2024 11:00,\"Новая\",\"a\nb\"\n");
+            }
+        }
+        Path file = write(csv.toString());
+
+        List<Long> indexes = new ArrayList<>();
+        ImportResult result = new CsvImportService(null, 2, 16).importFile(file, FileUtil.SCHEDULE_HEADER,
+                (fields, columns) -> fields[columns[NOTES]], (rows, importResult, listener) -> {
+                    rows.forEach(row -> indexes.add(row.index));
+                    return importResult;
+                }, null);
+
+        assertEquals(1, result.getErrors().size());
+        assertEquals(37, result.getErrors().get(0).getRowIndex());
+        assertEquals(49, indexes.size());
+        assertEquals(38, indexes.get(37).longValue());
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = dir.resolve("schedule.csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
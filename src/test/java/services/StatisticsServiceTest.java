@@ -0,0 +1,64 @@
+package services;
+
+import models.ServiceRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Методы одного показателя и summarize() должны давать одинаковые значения
+ */
+class StatisticsServiceTest {
+    private static final String[] TYPES = {"ТО", "Шиномонтаж", "Диагностика", "Ремонт двигателя"};
+    private static final String[] MODELS = {"Lada Vesta", "Kia Rio", "Skoda Octavia"};
+    private static final String[] STATUSES = {"Новая", "В работе", "Завершена"};
+
+    private final StatisticsService service = new StatisticsService();
+
+    @Test
+    void singleMetricsMatchSnapshot() {
+        List<ServiceRecord> records = generate(5000);
+        ServiceStatsSnapshot snapshot = service.summarize(records);
+
+        assertEquals(snapshot.getCountByType(), service.countServicesByType(records));
+        assertEquals(snapshot.getCountByModel(), service.countServicesByCarModel(records));
+        assertEquals(snapshot.getCountByStatus(), service.countServicesByStatus(records));
+        assertEquals(snapshot.getSumByType(), service.sumCostByServiceType(records));
+        assertEquals(snapshot.getMeanByType(), service.avgCostByServiceType(records));
+        assertEquals(snapshot.getPercentageByType(), service.calculateServiceTypePercentage(records));
+        assertEquals(snapshot.getTotal().getSum(), service.calculateTotalRevenue(records));
+        assertEquals(snapshot.getTotal().getMean(), service.calculateAverageServiceCost(records));
+        assertSame(snapshot.getMostExpensive(), service.findMostExpensiveService(records));
+        assertSame(snapshot.getCheapest(), service.findCheapestService(records));
+    }
+
+    @Test
+    void emptyListGivesZeroTotals() {
+        List<ServiceRecord> records = new ArrayList<>();
+
+        assertEquals(0.0, service.calculateTotalRevenue(records));
+        assertEquals(0.0, service.calculateAverageServiceCost(records));
+        assertNull(service.findMostExpensiveService(records));
+    }
+
+    private static List<ServiceRecord> generate(int count) {
+        Random random = new Random(42);
+        List<ServiceRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ServiceRecord record = new ServiceRecord();
+            record.setServiceType(TYPES[random.nextInt(TYPES.length)]);
+            record.setCarModel(MODELS[random.nextInt(MODELS.length)]);
+            record.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+            // Копейки в стоимости, чтобы суммы зависели от способа округления
+            record.setCost(random.nextInt(1_000_000) / 100.0);
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,113 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Формат CsvWriter -> CsvReader, на котором держится восстановление архива резервной копии
+ */
+class CsvReaderTest {
+    // Размер буфера CsvReader
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Test
+    void roundTripsQuotesCommasAndNewlines() throws IOException {
+        String[] values = {"простой", "с, запятой", "с \"кавычками\"", "строка 1\nстрока 2", "\r\n", "\"", ","};
+        StringWriter out = new StringWriter();
+        try (CsvWriter csv = new CsvWriter(out)) {
+            for (String value : values) {
+                csv.quoted(value);
+            }
+            csv.endRow();
+            csv.value(42).value("X'00ff'").endRow();
+        }
+
+        List<String[]> rows = readAll(out.toString());
+        assertEquals(2, rows.size());
+        assertArrayEquals(values, rows.get(0));
+        assertArrayEquals(new String[]{"42", "X'00ff'"}, rows.get(1));
+    }
+
+    @Test
+    void distinguishesNullFromEmptyString() throws IOException {
+        StringWriter out = new StringWriter();
+        try (CsvWriter csv = new CsvWriter(out)) {
+            csv.quoted(null).quoted("").value((String) null).endRow();
+        }
+
+        try (CsvReader reader = new CsvReader(new StringReader(out.toString()))) {
+            String[] row = reader.readRow();
+            assertEquals(3, row.length);
+            assertNull(row[0]);
+            assertFalse(reader.isQuoted(0));
+            assertEquals("", row[1]);
+            assertTrue(reader.isQuoted(1));
+            assertNull(row[2]);
+            assertNull(reader.readRow());
+        }
+    }
+
+    @Test
+    void countsQuotedLineBreaksAsOneLine() throws IOException {
+        try (CsvReader reader = new CsvReader(new StringReader("\"a\nb\",1\nc,2\n"))) {
+            assertArrayEquals(new String[]{"a\nb", "1"}, reader.readRow());
+            assertEquals(1, reader.getLineNumber());
+            assertArrayEquals(new String[]{"c", "2"}, reader.readRow());
+            assertEquals(2, reader.getLineNumber());
+        }
+    }
+
+    @Test
+    void handlesCrLfAcrossBufferBoundary() throws IOException {
+        // \r - последний символ первого буфера, \n - первый символ второго
+        char[] filler = new char[BUFFER_SIZE - 1];
+        Arrays.fill(filler, 'x');
+        String first = new String(filler);
+        List<String[]> rows = readAll(first + "\r\nnext\r\n");
+
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{first}, rows.get(0));
+        assertArrayEquals(new String[]{"next"}, rows.get(1));
+    }
+
+    @Test
+    void handlesEscapedQuoteAcrossBufferBoundary() throws IOException {
+        // Удвоенная кавычка разделена границей буфера
+        char[] filler = new char[BUFFER_SIZE - 2];
+        Arrays.fill(filler, 'y');
+        String text = new String(filler);
+        List<String[]> rows = readAll("\"" + text + "\"\"z\",1\n");
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[]{text + "\"z", "1"}, rows.get(0));
+    }
+
+    @Test
+    void failsOnUnclosedQuote() {
+        assertThrows(IOException.class, () -> readAll("\"без конца\n"));
+    }
+
+    private static List<String[]> readAll(String csv) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv))) {
+            String[] row;
+            while ((row = reader.readRow()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}